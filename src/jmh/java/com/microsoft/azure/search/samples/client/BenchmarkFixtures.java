@@ -0,0 +1,127 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.microsoft.azure.search.samples.demo.Hotel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Canned documents and responses built from the hotel fixtures in src/main/resources, shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+    private static final String[] HOTEL_RESOURCES = { "hotel1", "hotel10", "hotel11", "hotel12", "hotel13" };
+
+    private BenchmarkFixtures() {
+    }
+
+    static List<Hotel> hotels(int count) {
+        List<Hotel> hotels = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                String resource = "/" + HOTEL_RESOURCES[i % HOTEL_RESOURCES.length];
+                hotels.add(OBJECT_MAPPER.readValue(BenchmarkFixtures.class.getResource(resource), Hotel.class));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hotels;
+    }
+
+    static List<Map<String, Object>> hotelMaps(int count) {
+        List<Map<String, Object>> documents = new ArrayList<>(count);
+        for (Hotel hotel : hotels(count)) {
+            documents.add(OBJECT_MAPPER.convertValue(hotel, new TypeReference<Map<String, Object>>() {}));
+        }
+        return documents;
+    }
+
+    // a search response as the service sends it: annotations first, then the document, plus count and facets
+    static byte[] searchResponse(int hits) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("@odata.context", "https://service.search.windows.net/indexes('hotels')/$metadata");
+            json.writeNumberField("@odata.count", hits * 10L);
+            json.writeObjectFieldStart("@search.facets");
+            json.writeArrayFieldStart("Category");
+            for (String category : new String[] { "Boutique", "Budget", "Luxury", "Resort and Spa" }) {
+                json.writeStartObject();
+                json.writeNumberField("count", hits);
+                json.writeStringField("value", category);
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("value");
+            List<Map<String, Object>> documents = hotelMaps(hits);
+            for (int i = 0; i < hits; i++) {
+                json.writeStartObject();
+                json.writeNumberField("@search.score", 10.0 / (i + 1));
+                json.writeObjectFieldStart("@search.highlights");
+                json.writeStringField("Description@odata.type", "#Collection(String)");
+                json.writeArrayFieldStart("Description");
+                json.writeString("The <em>hotel</em> is ideally located on the main commercial artery");
+                json.writeEndArray();
+                json.writeEndObject();
+                writeFields(json, documents.get(i));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] suggestResponse(int hits) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("value");
+            List<Map<String, Object>> documents = hotelMaps(hits);
+            for (int i = 0; i < hits; i++) {
+                json.writeStartObject();
+                json.writeStringField("@search.text", "The <em>hotel</em> is ideally located");
+                writeFields(json, documents.get(i));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFields(JsonGenerator json, Map<String, Object> document) throws IOException {
+        for (Map.Entry<String, Object> field : document.entrySet()) {
+            json.writeObjectField(field.getKey(), field.getValue());
+        }
+    }
+
+    // discards what is written, counting bytes so the writes can't be optimized away
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
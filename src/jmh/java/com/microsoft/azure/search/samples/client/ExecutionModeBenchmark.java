@@ -0,0 +1,127 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 10,000 searches fanned out at once with searchAsync(), against a transport that blocks for 20 ms per request the
+ * way a socket read does, on platform threads and on virtual threads. The score is requests per second. After each
+ * run the peak number of platform threads is printed: each has its own stack outside the heap, which -prof gc
+ * doesn't see. Virtual threads need Java 21, on older JVMs run with -p mode=PLATFORM_THREADS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ExecutionModeBenchmark.REQUESTS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    static final int REQUESTS = 10_000;
+    private static final long LATENCY_MILLIS = 20;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({ "PLATFORM_THREADS", "VIRTUAL_THREADS" })
+    public ExecutionMode mode;
+
+    @Param({ "256", "10000" })
+    public int maxInFlight;
+
+    private SearchIndexClient client;
+    private SearchOptions options;
+
+    @Setup
+    public void setUp() {
+        client = SearchIndexClient.builder("service", "hotels", "key")
+                .transport(new BlockingTransport(BenchmarkFixtures.searchResponse(1)))
+                .maxInFlight(maxInFlight)
+                .executionMode(mode)
+                .build();
+        options = SearchOptions.builder().top(1).build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        System.out.println("Peak platform threads: " + THREADS.getPeakThreadCount());
+    }
+
+    @Benchmark
+    public void fanOut() {
+        CompletableFuture<?>[] searches = new CompletableFuture<?>[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            searches[i] = client.searchAsync("hotel", options);
+        }
+        CompletableFuture.allOf(searches).join();
+    }
+
+    private static class BlockingTransport implements HttpTransport {
+        private final byte[] response;
+
+        BlockingTransport(byte[] response) {
+            this.response = response;
+        }
+
+        @Override
+        public Response execute(String method, String url, Map<String, String> headers, RequestBody body)
+                throws IOException {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return new Response() {
+                @Override
+                public int statusCode() {
+                    return 200;
+                }
+
+                @Override
+                public String reasonPhrase() {
+                    return "OK";
+                }
+
+                @Override
+                public String header(String name) {
+                    return null;
+                }
+
+                @Override
+                public InputStream body() {
+                    return new ByteArrayInputStream(response);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.demo.Hotel;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Building upload operations for the hotel fixtures and writing them as an index batch request body, for typed
+ * documents and for the same documents as maps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBatchBenchmark {
+    @Param({ "5", "1000" })
+    public int batchSize;
+
+    private List<Hotel> hotels;
+    private List<Map<String, Object>> hotelMaps;
+    private List<IndexOperation> hotelOperations;
+    private List<IndexOperation> mapOperations;
+
+    @Setup
+    public void setUp() {
+        hotels = BenchmarkFixtures.hotels(batchSize);
+        hotelMaps = BenchmarkFixtures.hotelMaps(batchSize);
+        hotelOperations = uploadOperations(hotels);
+        mapOperations = uploadOperations(hotelMaps);
+    }
+
+    @Benchmark
+    public List<IndexOperation> uploadOperations() {
+        return uploadOperations(hotels);
+    }
+
+    @Benchmark
+    public long serializeHotelBatch() throws IOException {
+        BenchmarkFixtures.CountingOutputStream out = new BenchmarkFixtures.CountingOutputStream();
+        SearchIndexClient.writeIndexBatch(hotelOperations, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long serializeMapBatch() throws IOException {
+        BenchmarkFixtures.CountingOutputStream out = new BenchmarkFixtures.CountingOutputStream();
+        SearchIndexClient.writeIndexBatch(mapOperations, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long uploadAndSerializeHotelBatch() throws IOException {
+        BenchmarkFixtures.CountingOutputStream out = new BenchmarkFixtures.CountingOutputStream();
+        SearchIndexClient.writeIndexBatch(uploadOperations(hotels), out);
+        return out.count;
+    }
+
+    private static List<IndexOperation> uploadOperations(List<?> documents) {
+        List<IndexOperation> operations = new ArrayList<>(documents.size());
+        for (Object document : documents) {
+            operations.add(IndexOperation.uploadOperation(document));
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,111 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.results.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of the metrics hooks: a search against an in-memory transport with and without a LatencyRecorder, and
+ * recording into the histogram from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    private SearchIndexClient plainClient;
+    private SearchIndexClient meteredClient;
+    private LatencyRecorder recorder;
+    private CallResult callResult;
+    private SearchOptions options;
+
+    @Setup
+    public void setUp() {
+        byte[] response = BenchmarkFixtures.searchResponse(10);
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public Response execute(String method, String url, Map<String, String> headers, RequestBody body) {
+                return new CannedResponse(response);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        recorder = new LatencyRecorder();
+        plainClient = SearchIndexClient.builder("benchmark-service", "hotels", "key").transport(transport).build();
+        meteredClient = SearchIndexClient.builder("benchmark-service", "hotels", "key")
+                .transport(transport)
+                .metrics(recorder)
+                .build();
+        callResult = CallResult.create(OperationType.SEARCH, true, 200, 0, 0, response.length, 1_500_000, 1_200_000,
+                                       300_000);
+        options = SearchOptions.builder().top(10).build();
+    }
+
+    @Benchmark
+    public SearchResult searchWithoutMetrics() throws IOException {
+        return plainClient.search("hotel", options);
+    }
+
+    @Benchmark
+    public SearchResult searchWithMetrics() throws IOException {
+        return meteredClient.search("hotel", options);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordLatency() {
+        recorder.onCall(callResult);
+    }
+
+    private static class CannedResponse implements HttpTransport.Response {
+        private final byte[] body;
+
+        CannedResponse(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public String reasonPhrase() {
+            return "OK";
+        }
+
+        @Override
+        public String header(String name) {
+            return null;
+        }
+
+        @Override
+        public InputStream body() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.demo.Hotel;
+import com.microsoft.azure.search.samples.results.SearchResult;
+import com.microsoft.azure.search.samples.results.SuggestResult;
+import com.microsoft.azure.search.samples.results.TypedSearchResult;
+import com.microsoft.azure.search.samples.results.TypedSuggestResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Deserialization of canned search and suggest responses with the client's shared readers: the generic Map based
+ * results, the streaming hit parser, and binding straight to the Hotel class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    @Param({ "10", "1000" })
+    public int hits;
+
+    private SearchResponseParser parser;
+    private byte[] searchResponse;
+    private byte[] suggestResponse;
+
+    @Setup
+    public void setUp() {
+        parser = new SearchResponseParser();
+        searchResponse = BenchmarkFixtures.searchResponse(hits);
+        suggestResponse = BenchmarkFixtures.suggestResponse(hits);
+    }
+
+    @Benchmark
+    public SearchResult searchResultAsMaps() throws IOException {
+        return JsonCodecs.SEARCH_RESULT.readValue(searchResponse);
+    }
+
+    @Benchmark
+    public SearchResult searchResultStreamed(Blackhole blackhole) throws IOException {
+        return parser.parse(new ByteArrayInputStream(searchResponse), blackhole::consume);
+    }
+
+    @Benchmark
+    public TypedSearchResult<Hotel> searchResultAsHotels() throws IOException {
+        return parser.parseTyped(new ByteArrayInputStream(searchResponse), Hotel.class);
+    }
+
+    @Benchmark
+    public SuggestResult suggestResultAsMaps() throws IOException {
+        return JsonCodecs.SUGGEST_RESULT.readValue(suggestResponse);
+    }
+
+    @Benchmark
+    public TypedSuggestResult<Hotel> suggestResultAsHotels() throws IOException {
+        return parser.parseTypedSuggest(new ByteArrayInputStream(suggestResponse), Hotel.class);
+    }
+}
@@ -0,0 +1,110 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.options.SuggestOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlBuilderBenchmark {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private SearchIndexClient client;
+    private SearchOptions simpleOptions;
+    private SearchOptions fullOptions;
+    private SuggestOptions suggestOptions;
+    private PreparedSearch preparedSimple;
+    private PreparedSearch preparedAllOptions;
+    private PreparedSearch preparedParameterized;
+    private PreparedSuggest preparedSuggest;
+
+    @Setup
+    public void setUp() throws IOException {
+        client = new SearchIndexClient("benchmark-service", "hotels", "key");
+        simpleOptions = SearchOptions.builder().includeCount(true).build();
+        // the options of DemoOperations.searchAllFeatures
+        fullOptions = SearchOptions.builder()
+                .includeCount(true)
+                .filter("Rating lt 4 and Category eq 'Motel'")
+                .orderBy("Rating desc")
+                .select("HotelId,HotelName,Description,Rating,Category,Tags")
+                .searchFields("HotelName,Description")
+                .facets(Arrays.asList("Category", "Rating,interval:1", "Tags,count:10"))
+                .highlight("Description")
+                .highlightPreTag("<em>")
+                .highlightPostTag("</em>")
+                .top(20)
+                .skip(40)
+                .requireAllTerms(true)
+                .scoringProfile("boostByRating")
+                .scoringParameters(Arrays.asList("currentLocation--122.123,44.77233"))
+                .minimumCoverage(80.0)
+                .build();
+        suggestOptions = SuggestOptions.builder()
+                .filter("Category eq 'Luxury'")
+                .select("HotelId,HotelName")
+                .highlightPreTag("<b>")
+                .highlightPostTag("</b>")
+                .fuzzy(true)
+                .top(8)
+                .build();
+        preparedSimple = client.prepareSearch(simpleOptions);
+        preparedAllOptions = client.prepareSearch(fullOptions);
+        preparedParameterized = client.prepareSearch(fullOptions.toBuilder()
+                .filter("Rating lt {0} and Category eq {1}")
+                .build());
+        preparedSuggest = client.prepareSuggest("sg", suggestOptions);
+    }
+
+    @Benchmark
+    public String searchUrlSimple() throws IOException {
+        return client.buildSearchUrl("*", simpleOptions);
+    }
+
+    @Benchmark
+    public String searchUrlAllOptions() throws IOException {
+        return client.buildSearchUrl("luxury hotel near the \"city center\"", fullOptions);
+    }
+
+    @Benchmark
+    public String suggestUrl() throws IOException {
+        return client.buildIndexSuggestUrl("resor", "sg", suggestOptions);
+    }
+
+    @Benchmark
+    public String preparedSearchUrlSimple() {
+        return preparedSimple.url("*", NO_ARGUMENTS);
+    }
+
+    @Benchmark
+    public String preparedSearchUrlAllOptions() {
+        return preparedAllOptions.url("luxury hotel near the \"city center\"", NO_ARGUMENTS);
+    }
+
+    @Benchmark
+    public String preparedSearchUrlWithFilterArguments() {
+        return preparedParameterized.url("luxury hotel near the \"city center\"", new Object[] { 4, "Motel" });
+    }
+
+    @Benchmark
+    public String preparedSuggestUrl() {
+        return preparedSuggest.url("resor", NO_ARGUMENTS);
+    }
+}
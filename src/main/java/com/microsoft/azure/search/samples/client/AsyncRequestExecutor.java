@@ -0,0 +1,106 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs request attempts on a fixed pool of maxInFlight workers; anything beyond that waits in the queue without
+ * holding a thread. With virtual threads every attempt gets its own thread and waits for one of maxInFlight permits
+ * instead, which costs about a kilobyte of heap. Retry delays are scheduled on a timer instead of sleeping on a
+ * worker. Cancelling the returned future aborts the attempt that is running, if any, through Cancellation.
+ */
+class AsyncRequestExecutor {
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final RetryPolicy retryPolicy;
+    private final Semaphore inFlight;
+
+    AsyncRequestExecutor(int maxInFlight, RetryPolicy retryPolicy, ExecutionMode mode) {
+        this.retryPolicy = retryPolicy;
+        this.workers = ClientExecutors.newRequestPool("search-client-async", maxInFlight, mode);
+        this.inFlight = mode == ExecutionMode.VIRTUAL_THREADS ? new Semaphore(maxInFlight) : null;
+        this.timer = ClientExecutors.newScheduler("search-client-retry-timer");
+    }
+
+    <T> CompletableFuture<T> submit(OperationType type, SearchIndexClient.RetriableHttpOperation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Cancellation cancellation = new Cancellation();
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                cancellation.cancel();
+            }
+        });
+        attempt(type, operation, cancellation, 1, retryPolicy.startOperation(), future);
+        return future;
+    }
+
+    private <T> void attempt(OperationType type, SearchIndexClient.RetriableHttpOperation<T> operation,
+            Cancellation cancellation, int attempt, long startNanos, CompletableFuture<T> future) {
+        try {
+            workers.execute(() -> {
+                if (inFlight == null) {
+                    run(type, operation, cancellation, attempt, startNanos, future);
+                    return;
+                }
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    future.completeExceptionally(new InterruptedIOException("Interrupted while waiting to be sent"));
+                    return;
+                }
+                try {
+                    run(type, operation, cancellation, attempt, startNanos, future);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private <T> void run(OperationType type, SearchIndexClient.RetriableHttpOperation<T> operation,
+            Cancellation cancellation, int attempt, long startNanos, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            // cancelled by the caller while queued
+            return;
+        }
+        try {
+            future.complete(cancellation.run(operation));
+        } catch (IOException e) {
+            if (future.isDone()) {
+                // aborted by cancel()
+                return;
+            }
+            long delay = retryPolicy.retryDelayMillis(type, e, attempt, startNanos);
+            if (delay < 0) {
+                future.completeExceptionally(e);
+            } else {
+                retryLater(type, operation, cancellation, attempt + 1, startNanos, future, delay);
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private <T> void retryLater(OperationType type, SearchIndexClient.RetriableHttpOperation<T> operation,
+            Cancellation cancellation, int attempt, long startNanos, CompletableFuture<T> future, long delayMillis) {
+        try {
+            timer.schedule(() -> attempt(type, operation, cancellation, attempt, startNanos, future), delayMillis,
+                           TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,443 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.auto.value.AutoValue;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.results.IndexBatchOperationResult;
+import com.microsoft.azure.search.samples.results.IndexBatchResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ * Splits a stream of index operations into batches bounded by document count and encoded size, and keeps up to
+ * "concurrency" batches in flight. add() blocks while all batch slots are busy, which throttles producers to the
+ * speed of the service. Documents that fail with a transient per-item status are resubmitted on their own.
+ *
+ * Updates to the same document are applied in the order they were added: a batch that has a key of a batch still
+ * being sent, resubmissions included, waits for that batch before it is sent.
+ */
+public class BulkIndexer implements Closeable {
+    // 409: version conflict, 422: index temporarily unavailable, 503: service too busy
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = new HashSet<>(Arrays.asList(409, 422, 503));
+
+    private final SearchIndexClient client;
+    private final String keyField;
+    private final int maxBatchDocuments;
+    private final long maxBatchBytes;
+    private final int concurrency;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final Consumer<Stats> progressListener;
+
+    private final ExecutorService workers;
+    private final Semaphore batchSlots;
+    private final Map<String, PendingOperation> currentBatch = new LinkedHashMap<>();
+    private long currentBatchBytes;
+    // keys of the batches that were dispatched and haven't completed yet
+    private final Set<String> keysInFlight = new HashSet<>();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong documentsSucceeded = new AtomicLong();
+    private final AtomicLong documentsFailed = new AtomicLong();
+    private final AtomicLong documentsRetried = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final List<IndexBatchOperationResult> failures = Collections.synchronizedList(new ArrayList<>());
+
+    private BulkIndexer(Builder builder) {
+        this.client = builder.client;
+        this.keyField = builder.keyField;
+        this.maxBatchDocuments = builder.maxBatchDocuments;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.concurrency = builder.concurrency;
+        this.maxRetries = builder.maxRetries;
+        this.retryDelayMillis = builder.retryDelayMillis;
+        this.progressListener = builder.progressListener;
+        // batchSlots bounds the batches in flight either way
+        this.workers = ClientExecutors.newRequestPool("search-bulk-indexer", concurrency, builder.executionMode);
+        this.batchSlots = new Semaphore(concurrency);
+    }
+
+    public static Builder builder(SearchIndexClient client, String keyField) {
+        return new Builder(client, keyField);
+    }
+
+    public void add(IndexOperation operation) throws IOException {
+        add(serialize(operation));
+    }
+
+    // Encodes an operation for add(PendingOperation). Thread-safe, so producers can serialize in parallel and only
+    // hand over the bytes under the lock.
+    PendingOperation serialize(IndexOperation operation) throws IOException {
+        byte[] json = JsonCodecs.INDEX_OPERATION.writeValueAsBytes(operation);
+        return new PendingOperation(extractKey(json), json);
+    }
+
+    synchronized void add(PendingOperation operation) throws IOException {
+        if (currentBatch.size() >= maxBatchDocuments
+                || (!currentBatch.isEmpty() && currentBatchBytes + operation.json.length > maxBatchBytes)
+                || currentBatch.containsKey(operation.key)) {
+            // a batch can hold only one operation per key, a repeated key starts a new batch
+            dispatchCurrentBatch();
+        }
+        currentBatch.put(operation.key, operation);
+        currentBatchBytes += operation.json.length;
+    }
+
+    public void addAll(Iterable<IndexOperation> operations) throws IOException {
+        for (IndexOperation operation : operations) {
+            add(operation);
+        }
+    }
+
+    public void addAll(Stream<IndexOperation> operations) throws IOException {
+        Iterator<IndexOperation> iterator = operations.iterator();
+        while (iterator.hasNext()) {
+            add(iterator.next());
+        }
+    }
+
+    // Sends the partially filled batch and waits until every batch, including resubmissions, has completed
+    public synchronized void flush() throws IOException {
+        dispatchCurrentBatch();
+        try {
+            batchSlots.acquire(concurrency);
+            batchSlots.release(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batches to complete", e);
+        }
+    }
+
+    public Stats stats() {
+        return Stats.create(documentsSucceeded.get(), documentsFailed.get(), documentsRetried.get(),
+                            batchesSent.get(), bytesSent.get(), (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    // Operations that failed permanently, or still failed after maxRetries resubmissions
+    public List<IndexBatchOperationResult> failures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void dispatchCurrentBatch() throws IOException {
+        if (currentBatch.isEmpty()) {
+            return;
+        }
+        List<PendingOperation> batch = new ArrayList<>(currentBatch.values());
+        currentBatch.clear();
+        currentBatchBytes = 0;
+        try {
+            claimKeys(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for earlier updates of the same documents", e);
+        }
+        try {
+            batchSlots.acquire();
+        } catch (InterruptedException e) {
+            releaseKeys(batch);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a free batch slot", e);
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    sendWithRetries(batch);
+                } finally {
+                    releaseKeys(batch);
+                    batchSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseKeys(batch);
+            batchSlots.release();
+            throw e;
+        }
+    }
+
+    // Waits until no batch in flight has any of the batch's keys, then marks them as in flight. Uses its own lock
+    // rather than the indexer's, which flush() holds while batches complete.
+    private void claimKeys(List<PendingOperation> batch) throws InterruptedException {
+        synchronized (keysInFlight) {
+            while (anyInFlight(batch)) {
+                keysInFlight.wait();
+            }
+            for (PendingOperation operation : batch) {
+                keysInFlight.add(operation.key);
+            }
+        }
+    }
+
+    private boolean anyInFlight(List<PendingOperation> batch) {
+        for (PendingOperation operation : batch) {
+            if (keysInFlight.contains(operation.key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseKeys(List<PendingOperation> batch) {
+        synchronized (keysInFlight) {
+            for (PendingOperation operation : batch) {
+                keysInFlight.remove(operation.key);
+            }
+            keysInFlight.notifyAll();
+        }
+    }
+
+    private void sendWithRetries(List<PendingOperation> batch) {
+        List<PendingOperation> remaining = batch;
+        for (int attempt = 0; !remaining.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                documentsRetried.addAndGet(remaining.size());
+                try {
+                    Thread.sleep(retryDelayMillis << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failAll(remaining, "Interrupted before resubmitting failed documents", 0);
+                    break;
+                }
+            }
+            boolean lastAttempt = attempt == maxRetries;
+            try {
+                remaining = send(remaining, lastAttempt);
+            } catch (RuntimeException e) {
+                // e.g. a response that doesn't parse, the documents still count as failed
+                failAll(remaining, String.valueOf(e), 0);
+                break;
+            }
+        }
+        if (progressListener != null) {
+            progressListener.accept(stats());
+        }
+    }
+
+    // Returns the operations that should be resubmitted
+    private List<PendingOperation> send(List<PendingOperation> batch, boolean lastAttempt) {
+        List<byte[]> documents = new ArrayList<>(batch.size());
+        List<String> keys = new ArrayList<>(batch.size());
+        long bytes = 0;
+        for (PendingOperation operation : batch) {
+            documents.add(operation.json);
+            keys.add(operation.key);
+            bytes += operation.json.length;
+        }
+
+        IndexBatchResult result;
+        try {
+            result = client.indexSerializedBatch(documents, keys);
+        } catch (IOException e) {
+            // the client already retried what RetryPolicy allows, this only resubmits failures that may go away,
+            // a 400 or a missing index won't
+            if (lastAttempt || !RetryPolicy.isRetryable(e)) {
+                failAll(batch, e.getMessage(), statusCode(e));
+                return Collections.emptyList();
+            }
+            return batch;
+        } finally {
+            batchesSent.incrementAndGet();
+            bytesSent.addAndGet(bytes);
+        }
+
+        Map<String, PendingOperation> byKey = new LinkedHashMap<>();
+        for (PendingOperation operation : batch) {
+            byKey.put(operation.key, operation);
+        }
+        List<PendingOperation> retry = new ArrayList<>();
+        for (IndexBatchOperationResult r : result.value()) {
+            PendingOperation operation = byKey.remove(r.key());
+            if (r.status()) {
+                documentsSucceeded.incrementAndGet();
+            } else if (operation != null && !lastAttempt && RETRYABLE_STATUS_CODES.contains(r.statusCode())) {
+                retry.add(operation);
+            } else {
+                documentsFailed.incrementAndGet();
+                failures.add(r);
+            }
+        }
+        // the service reports every document of a batch, anything left over is treated as not processed
+        if (!byKey.isEmpty()) {
+            if (lastAttempt) {
+                failAll(byKey.values(), "No result reported for document", 0);
+            } else {
+                retry.addAll(byKey.values());
+            }
+        }
+        return retry;
+    }
+
+    private void failAll(Iterable<PendingOperation> operations, String message, int statusCode) {
+        for (PendingOperation operation : operations) {
+            documentsFailed.incrementAndGet();
+            failures.add(IndexBatchOperationResult.create(operation.key, false, message, statusCode));
+        }
+    }
+
+    // the HTTP status of a failed batch request, 0 if it didn't get a response
+    private static int statusCode(IOException e) {
+        if (e instanceof HttpErrorException) {
+            return ((HttpErrorException) e).statusCode();
+        }
+        if (e instanceof ThrottledException) {
+            return ((ThrottledException) e).responseCode();
+        }
+        return 0;
+    }
+
+    String keyField() {
+        return keyField;
+    }
+
+    // the key of a serialized document or index operation
+    String extractKey(byte[] json) throws IOException {
+        try (JsonParser parser = JsonCodecs.factory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Index operations must serialize to a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (keyField.equals(field)) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Index operation has no value for key field " + keyField);
+    }
+
+    static class PendingOperation {
+        final String key;
+        final byte[] json;
+
+        PendingOperation(String key, byte[] json) {
+            this.key = key;
+            this.json = json;
+        }
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+        public abstract long documentsSucceeded();
+
+        public abstract long documentsFailed();
+
+        public abstract long documentsRetried();
+
+        public abstract long batchesSent();
+
+        public abstract long bytesSent();
+
+        public abstract long elapsedMillis();
+
+        public double documentsPerSecond() {
+            return elapsedMillis() == 0 ? 0 : documentsSucceeded() * 1000.0 / elapsedMillis();
+        }
+
+        public double bytesPerSecond() {
+            return elapsedMillis() == 0 ? 0 : bytesSent() * 1000.0 / elapsedMillis();
+        }
+
+        static Stats create(long documentsSucceeded, long documentsFailed, long documentsRetried, long batchesSent,
+                long bytesSent, long elapsedMillis) {
+            return new com.microsoft.azure.search.samples.client.AutoValue_BulkIndexer_Stats(documentsSucceeded,
+                                                                                             documentsFailed,
+                                                                                             documentsRetried,
+                                                                                             batchesSent,
+                                                                                             bytesSent,
+                                                                                             elapsedMillis);
+        }
+    }
+
+    public static class Builder {
+        private final SearchIndexClient client;
+        private final String keyField;
+        // the service accepts at most 1000 documents and 16 MB per batch
+        private int maxBatchDocuments = 1000;
+        private long maxBatchBytes = 16L * 1024 * 1024;
+        private int concurrency = 4;
+        private int maxRetries = 3;
+        private long retryDelayMillis = 1000;
+        private Consumer<Stats> progressListener;
+        private ExecutionMode executionMode;
+
+        private Builder(SearchIndexClient client, String keyField) {
+            this.client = client;
+            this.keyField = keyField;
+            this.executionMode = client.executionMode();
+        }
+
+        public Builder maxBatchDocuments(int maxBatchDocuments) {
+            this.maxBatchDocuments = maxBatchDocuments;
+            return this;
+        }
+
+        public Builder maxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        // delay before the first resubmission, doubled for every following one
+        public Builder retryDelayMillis(long retryDelayMillis) {
+            this.retryDelayMillis = retryDelayMillis;
+            return this;
+        }
+
+        // called after every batch completes, from the thread that sent it
+        public Builder progressListener(Consumer<Stats> progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        // the client's execution mode by default
+        public Builder executionMode(ExecutionMode executionMode) {
+            if (!executionMode.isSupported()) {
+                throw new IllegalArgumentException(executionMode + " needs Java 21 or later");
+            }
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public BulkIndexer build() {
+            return new BulkIndexer(this);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.microsoft.azure.search.samples.client;
+
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * Collects the measurements of one client call while it runs. The call is bound to the thread running an attempt
+ * so that the transport layer can add to it without every operation passing it along; hedged attempts on other
+ * threads are bound explicitly. Updates are synchronized because a hedged call has two attempts in flight.
+ */
+class CallMetrics {
+    private static final ThreadLocal<CallMetrics> CURRENT = new ThreadLocal<>();
+
+    private final OperationType operation;
+    private final long startNanos = System.nanoTime();
+    private int attempts;
+    private int statusCode;
+    private long requestBytes;
+    private long responseBytes;
+    private long attemptNanos;
+    private long networkNanos;
+
+    CallMetrics(OperationType operation) {
+        this.operation = operation;
+    }
+
+    @Nullable
+    static CallMetrics current() {
+        return CURRENT.get();
+    }
+
+    // returns the previously bound call, to be restored afterwards
+    @Nullable
+    static CallMetrics bind(@Nullable CallMetrics call) {
+        CallMetrics previous = CURRENT.get();
+        if (call == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(call);
+        }
+        return previous;
+    }
+
+    // runs r as one attempt of this call on the current thread
+    <T> SearchIndexClient.RetriableHttpOperation<T> attempt(SearchIndexClient.RetriableHttpOperation<T> r) {
+        return () -> {
+            CallMetrics previous = bind(this);
+            long start = System.nanoTime();
+            synchronized (this) {
+                attempts++;
+            }
+            try {
+                return r.run();
+            } finally {
+                addAttemptNanos(System.nanoTime() - start);
+                bind(previous);
+            }
+        };
+    }
+
+    HttpTransport.RequestBody meter(HttpTransport.RequestBody body) {
+        return out -> body.writeTo(new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                addRequestBytes(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                addRequestBytes(len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        });
+    }
+
+    HttpTransport.Response meter(HttpTransport.Response response) {
+        synchronized (this) {
+            statusCode = response.statusCode();
+        }
+        return new MeteredResponse(response);
+    }
+
+    synchronized void addNetworkNanos(long nanos) {
+        networkNanos += nanos;
+    }
+
+    private synchronized void addRequestBytes(long bytes) {
+        requestBytes += bytes;
+    }
+
+    private synchronized void addResponseBytes(long bytes, long nanos) {
+        responseBytes += bytes;
+        networkNanos += nanos;
+    }
+
+    private synchronized void addAttemptNanos(long nanos) {
+        attemptNanos += nanos;
+    }
+
+    synchronized CallResult result(boolean succeeded) {
+        return CallResult.create(operation, succeeded, statusCode, Math.max(0, attempts - 1), requestBytes,
+                                 responseBytes, System.nanoTime() - startNanos, networkNanos,
+                                 Math.max(0, attemptNanos - networkNanos));
+    }
+
+    private class MeteredResponse implements HttpTransport.Response {
+        private final HttpTransport.Response response;
+        private InputStream body;
+
+        MeteredResponse(HttpTransport.Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String reasonPhrase() {
+            return response.reasonPhrase();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(response.body()) {
+                    @Override
+                    public int read() throws IOException {
+                        long start = System.nanoTime();
+                        int b = in.read();
+                        addResponseBytes(b < 0 ? 0 : 1, System.nanoTime() - start);
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        long start = System.nanoTime();
+                        int read = in.read(b, off, len);
+                        addResponseBytes(Math.max(0, read), System.nanoTime() - start);
+                        return read;
+                    }
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.close();
+        }
+    }
+}
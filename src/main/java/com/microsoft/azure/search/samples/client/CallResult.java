@@ -0,0 +1,38 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.google.auto.value.AutoValue;
+
+/*
+ * What a single SearchIndexClient call cost. Network time covers sending the request, waiting for the response and
+ * reading its body; processing time is the rest of the time spent in attempts, mostly JSON parsing. The total also
+ * includes waiting for the concurrency limiter and backing off between retries.
+ */
+@AutoValue
+public abstract class CallResult {
+    public abstract OperationType operation();
+
+    public abstract boolean succeeded();
+
+    // status of the last response, 0 if none was received, e.g. for a failed connection or a cache hit
+    public abstract int statusCode();
+
+    public abstract int retries();
+
+    public abstract long requestBytes();
+
+    public abstract long responseBytes();
+
+    public abstract long totalNanos();
+
+    public abstract long networkNanos();
+
+    public abstract long processingNanos();
+
+    static CallResult create(OperationType operation, boolean succeeded, int statusCode, int retries,
+            long requestBytes, long responseBytes, long totalNanos, long networkNanos, long processingNanos) {
+        return new com.microsoft.azure.search.samples.client.AutoValue_CallResult(operation, succeeded, statusCode,
+                                                                                  retries, requestBytes,
+                                                                                  responseBytes, totalNanos,
+                                                                                  networkNanos, processingNanos);
+    }
+}
@@ -0,0 +1,109 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Lets another thread abort the HTTP exchange an attempt is in the middle of, e.g. the losing attempt of a hedged
+ * read, so it gives up its connection and thread right away instead of reading a response nobody waits for.
+ * Transports register how to abort the request they are sending with onAbort(); the exchange then fails with an
+ * IOException on the thread running it. Transports that don't register anything just run to completion.
+ * A cancellation created with linked() is also cancelled along with the one bound to the thread that created it,
+ * so cancelling an async call reaches the attempts a hedged read races inside it.
+ */
+final class Cancellation {
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    private boolean cancelled;
+    private Closeable abort;
+    private List<Cancellation> linked;
+
+    // a cancellation that is cancelled along with the one bound to the calling thread, if any
+    static Cancellation linked() {
+        Cancellation child = new Cancellation();
+        Cancellation parent = CURRENT.get();
+        if (parent != null) {
+            synchronized (parent) {
+                if (!parent.cancelled) {
+                    if (parent.linked == null) {
+                        parent.linked = new ArrayList<>(2);
+                    }
+                    parent.linked.add(child);
+                    return child;
+                }
+            }
+            child.cancel();
+        }
+        return child;
+    }
+
+    // runs the attempt on the calling thread, with this cancellation bound for the transport
+    <T> T run(SearchIndexClient.RetriableHttpOperation<T> attempt) throws IOException {
+        Cancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return attempt.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    // Called by transports before a request is sent. Throws if the attempt was cancelled already.
+    static void onAbort(Closeable abort) throws IOException {
+        Cancellation cancellation = CURRENT.get();
+        if (cancellation == null) {
+            return;
+        }
+        synchronized (cancellation) {
+            if (!cancellation.cancelled) {
+                cancellation.abort = abort;
+                return;
+            }
+        }
+        throw new InterruptedIOException("Request cancelled");
+    }
+
+    void cancel() {
+        Closeable abort;
+        List<Cancellation> linked;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            abort = this.abort;
+            linked = this.linked;
+            this.abort = null;
+            this.linked = null;
+        }
+        if (linked != null) {
+            for (Cancellation child : linked) {
+                child.cancel();
+            }
+        }
+        if (abort != null) {
+            try {
+                abort.close();
+            } catch (IOException e) {
+                // the exchange fails either way
+            }
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // whether the attempt running on this thread was cancelled
+    static boolean isCurrentCancelled() {
+        Cancellation cancellation = CURRENT.get();
+        return cancellation != null && cancellation.isCancelled();
+    }
+}
@@ -0,0 +1,103 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Fails requests fast while the service is down. After failureThreshold consecutive failures (server errors and
+ * failed connections, not client errors or throttling, which includes a 503) the breaker opens and rejects every
+ * request for openDuration. Then a single trial request is let through: if it succeeds the breaker closes, otherwise it opens
+ * again.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+    private long rejections;
+
+    private CircuitBreaker(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openDurationNanos = builder.openDurationNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized long rejections() {
+        return rejections;
+    }
+
+    // returns whether the request is the trial, which has to be passed back to onIgnored()
+    synchronized boolean acquire() throws IOException {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+            rejections++;
+            throw new RequestRejectedException("Circuit breaker is open, the service failed " + consecutiveFailures
+                                                       + " requests in a row");
+        }
+        if (state == State.HALF_OPEN) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    // The outcome says nothing about the health of the service, e.g. a throttled request. Only the trial itself
+    // makes way for another trial, not a request let through before the breaker went half-open.
+    synchronized void onIgnored(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+        trialInFlight = false;
+    }
+
+    public static class Builder {
+        private int failureThreshold = 5;
+        private long openDurationNanos = TimeUnit.SECONDS.toNanos(30);
+
+        private Builder() {
+        }
+
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        public Builder openDuration(long openDuration, TimeUnit unit) {
+            this.openDurationNanos = unit.toNanos(openDuration);
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
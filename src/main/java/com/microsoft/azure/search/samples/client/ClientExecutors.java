@@ -0,0 +1,46 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// All threads started by the client library are created here so they are named and never keep the JVM alive
+final class ClientExecutors {
+    private ClientExecutors() {
+    }
+
+    static ExecutorService newWorkerPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(name));
+    }
+
+    // a fixed pool of "threads" workers, or a virtual thread per task that the caller has to bound itself
+    static ExecutorService newRequestPool(String name, int threads, ExecutionMode mode) {
+        return mode == ExecutionMode.VIRTUAL_THREADS
+                ? VirtualThreads.newThreadPerTaskExecutor(name)
+                : newWorkerPool(name, threads);
+    }
+
+    static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(name));
+    }
+
+    // timer for short, non-blocking tasks of objects that are too numerous to own a thread each
+    static ScheduledExecutorService sharedScheduler() {
+        return SharedScheduler.INSTANCE;
+    }
+
+    private static class SharedScheduler {
+        static final ScheduledExecutorService INSTANCE = newScheduler("search-client-shared-timer");
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
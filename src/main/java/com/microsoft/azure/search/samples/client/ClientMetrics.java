@@ -0,0 +1,11 @@
+package com.microsoft.azure.search.samples.client;
+
+/*
+ * Listener for the outcome of every SearchIndexClient call, after all of its retries. Called on the thread that
+ * completed the call, so implementations must be thread safe and should return quickly. LatencyRecorder is the
+ * built-in implementation.
+ */
+@FunctionalInterface
+public interface ClientMetrics {
+    void onCall(CallResult result);
+}
@@ -0,0 +1,393 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/*
+ * Opt-in gzip for request bodies and transparent decompression of gzip and deflate responses.
+ *
+ * Request bodies are streamed, so their size isn't known up front. To honor the threshold a body is first written
+ * into a buffer that gives up once it holds more than threshold bytes: a body that fits is sent from that buffer as
+ * is, a larger one is written again through gzip straight to the connection. The extra work is serializing at most
+ * threshold bytes twice.
+ *
+ * Compression sits between the operation and the metering of ClientMetrics, so CallResult byte counts are what
+ * went over the wire; stats() has the sizes before and after.
+ */
+public class Compression {
+    private final boolean compressRequests;
+    private final int requestThresholdBytes;
+    private final int level;
+    private final boolean acceptCompressedResponses;
+
+    private final LongAdder requestsCompressed = new LongAdder();
+    private final LongAdder requestsUncompressed = new LongAdder();
+    private final LongAdder requestBytesBefore = new LongAdder();
+    private final LongAdder requestBytesAfter = new LongAdder();
+    private final LongAdder responsesDecompressed = new LongAdder();
+    private final LongAdder responseBytesBefore = new LongAdder();
+    private final LongAdder responseBytesAfter = new LongAdder();
+
+    private Compression(Builder builder) {
+        this.compressRequests = builder.compressRequests;
+        this.requestThresholdBytes = builder.requestThresholdBytes;
+        this.level = builder.level;
+        this.acceptCompressedResponses = builder.acceptCompressedResponses;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Stats stats() {
+        return Stats.create(requestsCompressed.sum(), requestsUncompressed.sum(), requestBytesBefore.sum(),
+                            requestBytesAfter.sum(), responsesDecompressed.sum(), responseBytesBefore.sum(),
+                            responseBytesAfter.sum());
+    }
+
+    boolean acceptCompressedResponses() {
+        return acceptCompressedResponses;
+    }
+
+    // Returns the body to send, a gzip body if it is larger than the threshold, and whether it is compressed
+    EncodedBody encode(HttpTransport.RequestBody body) throws IOException {
+        if (!compressRequests) {
+            return new EncodedBody(body, false);
+        }
+        BoundedBuffer buffer = new BoundedBuffer(requestThresholdBytes);
+        try {
+            body.writeTo(buffer);
+        } catch (IOException e) {
+            if (!exceedsThreshold(e)) {
+                throw e;
+            }
+            requestsCompressed.increment();
+            return new EncodedBody(out -> writeCompressed(body, out), true);
+        }
+        requestsUncompressed.increment();
+        return new EncodedBody(buffer::writeTo, false);
+    }
+
+    // serializers may wrap what the stream throws
+    private static boolean exceedsThreshold(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ThresholdExceeded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Wraps the body of a gzip or deflate encoded response in a decompressing stream
+    HttpTransport.Response decode(HttpTransport.Response response) {
+        String encoding = response.header("content-encoding");
+        if (encoding == null) {
+            return response;
+        }
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        if (!encoding.equals("gzip") && !encoding.equals("x-gzip") && !encoding.equals("deflate")) {
+            return response;
+        }
+        responsesDecompressed.increment();
+        return new DecodedResponse(response, !encoding.equals("deflate"));
+    }
+
+    private void writeCompressed(HttpTransport.RequestBody body, OutputStream out) throws IOException {
+        CountingOutputStream compressed = new CountingOutputStream(out);
+        try (GZIPOutputStream gzip = new LevelGzipOutputStream(compressed, level)) {
+            CountingOutputStream uncompressed = new CountingOutputStream(gzip);
+            body.writeTo(uncompressed);
+            uncompressed.flush();
+            requestBytesBefore.add(uncompressed.count);
+        }
+        requestBytesAfter.add(compressed.count);
+    }
+
+    static class EncodedBody {
+        final HttpTransport.RequestBody body;
+        final boolean compressed;
+
+        EncodedBody(HttpTransport.RequestBody body, boolean compressed) {
+            this.body = body;
+            this.compressed = compressed;
+        }
+    }
+
+    // thrown for every request above the threshold, so without the cost of a stack trace
+    private static class ThresholdExceeded extends IOException {
+        ThresholdExceeded() {
+            super("Request body is larger than the compression threshold");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static class BoundedBuffer extends OutputStream {
+        private final byte[] buffer;
+        private int count;
+
+        BoundedBuffer(int limit) {
+            this.buffer = new byte[limit];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                throw new ThresholdExceeded();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - count) {
+                throw new ThresholdExceeded();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closing is up to whoever owns the underlying stream
+            flush();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder bytes;
+
+        CountingInputStream(InputStream in, LongAdder bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                bytes.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+    }
+
+    private class DecodedResponse implements HttpTransport.Response {
+        private final HttpTransport.Response response;
+        private final boolean gzip;
+        private InputStream body;
+
+        DecodedResponse(HttpTransport.Response response, boolean gzip) {
+            this.response = response;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String reasonPhrase() {
+            return response.reasonPhrase();
+        }
+
+        @Override
+        @Nullable
+        public String header(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            if (body == null) {
+                InputStream raw = new CountingInputStream(response.body(), responseBytesBefore);
+                InputStream decompressed = gzip ? new GZIPInputStream(raw, 8192) : inflate(raw);
+                body = new CountingInputStream(decompressed, responseBytesAfter);
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (body != null) {
+                    // releases the native inflater
+                    body.close();
+                }
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    // "deflate" is meant to be zlib wrapped, but some servers send raw deflate data; the zlib header tells them apart
+    private static InputStream inflate(InputStream raw) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(raw, 2);
+        int first = in.read();
+        int second = in.read();
+        if (second >= 0) {
+            in.unread(second);
+        }
+        if (first >= 0) {
+            in.unread(first);
+        }
+        boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlib), 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // an inflater passed in isn't ended by the stream
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+        public abstract long requestsCompressed();
+
+        // requests below the threshold, sent as they are
+        public abstract long requestsUncompressed();
+
+        public abstract long requestBytesBeforeCompression();
+
+        public abstract long requestBytesAfterCompression();
+
+        public abstract long responsesDecompressed();
+
+        public abstract long responseBytesBeforeDecompression();
+
+        public abstract long responseBytesAfterDecompression();
+
+        // compressed size as a fraction of the original, 1 if nothing was compressed
+        public double requestCompressionRatio() {
+            return requestBytesBeforeCompression() == 0
+                    ? 1
+                    : (double) requestBytesAfterCompression() / requestBytesBeforeCompression();
+        }
+
+        public double responseCompressionRatio() {
+            return responseBytesAfterDecompression() == 0
+                    ? 1
+                    : (double) responseBytesBeforeDecompression() / responseBytesAfterDecompression();
+        }
+
+        static Stats create(long requestsCompressed, long requestsUncompressed, long requestBytesBefore,
+                long requestBytesAfter, long responsesDecompressed, long responseBytesBefore,
+                long responseBytesAfter) {
+            return new com.microsoft.azure.search.samples.client.AutoValue_Compression_Stats(requestsCompressed,
+                                                                                             requestsUncompressed,
+                                                                                             requestBytesBefore,
+                                                                                             requestBytesAfter,
+                                                                                             responsesDecompressed,
+                                                                                             responseBytesBefore,
+                                                                                             responseBytesAfter);
+        }
+    }
+
+    public static class Builder {
+        private boolean compressRequests = true;
+        // below about a packet, compressing saves nothing worth the CPU
+        private int requestThresholdBytes = 1400;
+        // most of the size reduction of JSON comes at the fastest level
+        private int level = Deflater.BEST_SPEED;
+        private boolean acceptCompressedResponses = true;
+
+        private Builder() {
+        }
+
+        public Builder compressRequests(boolean compressRequests) {
+            this.compressRequests = compressRequests;
+            return this;
+        }
+
+        // bodies of up to this many bytes are sent as they are, 0 compresses every body
+        public Builder requestThresholdBytes(int requestThresholdBytes) {
+            if (requestThresholdBytes < 0) {
+                throw new IllegalArgumentException("requestThresholdBytes must not be negative");
+            }
+            this.requestThresholdBytes = requestThresholdBytes;
+            return this;
+        }
+
+        // 1 (fastest) to 9 (smallest)
+        public Builder level(int level) {
+            if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("level must be between 1 and 9");
+            }
+            this.level = level;
+            return this;
+        }
+
+        // sends "Accept-Encoding: gzip, deflate" with every request
+        public Builder acceptCompressedResponses(boolean acceptCompressedResponses) {
+            this.acceptCompressedResponses = acceptCompressedResponses;
+            return this;
+        }
+
+        public Compression build() {
+            return new Compression(this);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Adaptive limit on the number of requests in flight (AIMD). Every request that completes normally while the limit
+ * is in use raises it by 1/limit, so it grows by about one per round trip. A throttled, timed out or failed request,
+ * or one slower than maxLatency, multiplies it by backoffRatio. Callers above the limit wait for up to maxWait in a
+ * queue of at most maxQueueLength, after that they are rejected.
+ */
+public class ConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long maxLatencyNanos;
+    private final int maxQueueLength;
+    private final long maxWaitNanos;
+    private double limit;
+    private int inFlight;
+    private int queueDepth;
+    private long rejections;
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.maxLatencyNanos = builder.maxLatencyNanos;
+        this.maxQueueLength = builder.maxQueueLength;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.limit = builder.initialLimit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queueDepth() {
+        return queueDepth;
+    }
+
+    public synchronized long rejections() {
+        return rejections;
+    }
+
+    synchronized void acquire() throws IOException {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return;
+        }
+        if (queueDepth >= maxQueueLength) {
+            rejections++;
+            throw new RequestRejectedException("Too many requests waiting for the concurrency limit of " + limit());
+        }
+        queueDepth++;
+        try {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejections++;
+                    throw new RequestRejectedException("Timed out waiting for the concurrency limit of " + limit());
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the concurrency limit", e);
+        } finally {
+            queueDepth--;
+        }
+    }
+
+    // the request completed, latency is measured from after acquire()
+    synchronized void onSuccess(long latencyNanos) {
+        if (maxLatencyNanos > 0 && latencyNanos > maxLatencyNanos) {
+            decrease();
+        } else if (inFlight >= limit / 2) {
+            // only grow while the limit is actually used, an idle client would otherwise drift to maxLimit
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        release();
+    }
+
+    // the service was overloaded: throttled, timed out or failed the request
+    synchronized void onDropped() {
+        decrease();
+        release();
+    }
+
+    // the request failed for a reason that says nothing about load, e.g. a 404
+    synchronized void onIgnored() {
+        release();
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private long maxLatencyNanos;
+        private int maxQueueLength = 1000;
+        private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+
+        private Builder() {
+        }
+
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        // factor applied to the limit on every dropped request
+        public Builder backoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        // responses slower than this count as dropped, not set by default
+        public Builder maxLatency(long latency, TimeUnit unit) {
+            this.maxLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        public Builder maxQueueLength(int maxQueueLength) {
+            this.maxQueueLength = maxQueueLength;
+            return this;
+        }
+
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Reads the key of a document without serializing it: map documents are looked up directly, for POJOs the
+ * accessor Jackson would use for the key property is resolved once per class and then invoked.
+ */
+class DocumentKeys {
+    private final String keyField;
+    private final Map<Class<?>, AnnotatedMember> accessors = new ConcurrentHashMap<>();
+
+    DocumentKeys(String keyField) {
+        this.keyField = keyField;
+    }
+
+    @Nullable
+    String keyOf(Object document) {
+        Object key;
+        if (document instanceof Map) {
+            key = ((Map<?, ?>) document).get(keyField);
+        } else {
+            AnnotatedMember accessor = accessors.computeIfAbsent(document.getClass(), this::findAccessor);
+            key = accessor == null ? null : accessor.getValue(document);
+        }
+        return key == null ? null : key.toString();
+    }
+
+    @Nullable
+    private AnnotatedMember findAccessor(Class<?> type) {
+        for (BeanPropertyDefinition property : JsonCodecs.introspect(type).findProperties()) {
+            if (property.getName().equals(keyField) && property.getAccessor() != null) {
+                AnnotatedMember accessor = property.getAccessor();
+                accessor.fixAccess(true);
+                return accessor;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Documents as the client reads and writes them, for code outside this package that works with documents
+ * directly, e.g. loading fixtures or comparing versions. Goes through the shared JSON configuration of JsonCodecs,
+ * so a document is read and its fields are named exactly as they would be in a request.
+ */
+public final class Documents {
+    private static final Map<Class<?>, List<BeanPropertyDefinition>> PROPERTIES = new ConcurrentHashMap<>();
+
+    private Documents() {
+    }
+
+    public static <T> T read(URL source, Class<T> documentType) throws IOException {
+        return JsonCodecs.readerFor(documentType).readValue(source);
+    }
+
+    // The fields a document is serialized with, in order: a map as it is, for other types the properties Jackson
+    // writes, read straight from the object without serializing it
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> fields(Object document) {
+        if (document instanceof Map) {
+            return (Map<String, Object>) document;
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (BeanPropertyDefinition property : properties(document.getClass())) {
+            fields.put(property.getName(), property.getAccessor().getValue(document));
+        }
+        return fields;
+    }
+
+    private static List<BeanPropertyDefinition> properties(Class<?> type) {
+        return PROPERTIES.computeIfAbsent(type, t -> {
+            List<BeanPropertyDefinition> properties = new ArrayList<>();
+            for (BeanPropertyDefinition property : JsonCodecs.introspect(t).findProperties()) {
+                if (property.couldSerialize() && property.getAccessor() != null) {
+                    // generated AutoValue classes aren't public
+                    property.getAccessor().fixAccess(true);
+                    properties.add(property);
+                }
+            }
+            return properties;
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.microsoft.azure.search.samples.client;
+
+/*
+ * The threads that run the requests of the *Async methods, multiSearch() and lookupMany(), and the batches of a
+ * BulkIndexer. Either way the requests block on I/O; what differs is what a waiting request costs.
+ */
+public enum ExecutionMode {
+    // a fixed pool of maxInFlight platform threads, requests beyond that wait in its queue
+    PLATFORM_THREADS,
+    // a new virtual thread per request, at most maxInFlight of them sending at a time; needs Java 21
+    VIRTUAL_THREADS;
+
+    public boolean isSupported() {
+        return this == PLATFORM_THREADS || VirtualThreads.isSupported();
+    }
+}
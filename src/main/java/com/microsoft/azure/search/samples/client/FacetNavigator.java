@@ -0,0 +1,361 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.results.FacetNavigation;
+import com.microsoft.azure.search.samples.results.SearchResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Disjunctive faceting for navigation pages: values selected within a facet are or-ed, selections of different
+ * facets are and-ed, and every facet is counted with the selections of all the other facets but not its own, so
+ * the values next to a selected one keep their counts.
+ *
+ *   FacetNavigator navigator = FacetNavigator.builder(client)
+ *           .facet("Category")
+ *           .collectionFacet("Tags")
+ *           .facet("Rating", "values:2|3|4")
+ *           .collectionFacet("Rooms/BaseRate", "values:100|200|300")
+ *           .build();
+ *   FacetNavigation page = navigator.navigate("hotel", options, selections);
+ *
+ * The page itself and the facets without a selection share one query; each facet with a selection needs a count
+ * only query ($top=0) of its own. All of them are sent at once, so a page takes one round trip. Facet counts are
+ * cached per search text, filter and facet, so a drill-down only sends the queries whose filter changed.
+ *
+ * Selections are the FacetValues of an earlier page, or FacetValue.create(value, null, null, 0) for a plain value.
+ */
+public class FacetNavigator {
+    private final SearchIndexClient client;
+    private final Map<String, Facet> facets;
+    private final FacetCache cache;
+
+    private FacetNavigator(Builder builder) {
+        this.client = builder.client;
+        this.facets = new LinkedHashMap<>(builder.facets);
+        this.cache = builder.cacheEntries > 0 ? new FacetCache(builder.cacheEntries, builder.cacheTtlNanos) : null;
+    }
+
+    public static Builder builder(SearchIndexClient client) {
+        return new Builder(client);
+    }
+
+    public FacetNavigation navigate(String search, SearchOptions options,
+            Map<String, ? extends Collection<SearchResult.FacetValue>> selections) throws IOException {
+        Map<String, String> clauses = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<SearchResult.FacetValue>> selection : selections.entrySet()) {
+            Facet facet = facets.get(selection.getKey());
+            if (facet == null) {
+                throw new IllegalArgumentException("Unknown facet " + selection.getKey());
+            }
+            if (!selection.getValue().isEmpty()) {
+                clauses.put(facet.name, facet.filter(selection.getValue()));
+            }
+        }
+        String baseFilter = options.filter().orElse(null);
+        String pageFilter = and(baseFilter, clauses, null);
+
+        Map<String, SearchResult.FacetValue[]> counts = new HashMap<>();
+        Map<String, String> cacheKeys = new HashMap<>();
+        List<String> pageFacets = new ArrayList<>(options.facets());
+        Map<String, CompletableFuture<SearchResult>> countQueries = new LinkedHashMap<>();
+        for (Facet facet : facets.values()) {
+            String filter = clauses.containsKey(facet.name) ? and(baseFilter, clauses, facet.name) : pageFilter;
+            String cacheKey = cacheKey(search, options, filter, facet.expression);
+            SearchResult.FacetValue[] cached = cache != null ? cache.get(cacheKey) : null;
+            if (cached != null) {
+                counts.put(facet.name, cached);
+                continue;
+            }
+            cacheKeys.put(facet.name, cacheKey);
+            if (Objects.equals(filter, pageFilter)) {
+                pageFacets.add(facet.expression);
+            } else {
+                countQueries.put(facet.name, client.searchAsync(search, countOnly(options, filter, facet.expression)));
+            }
+        }
+        int cachedFacets = counts.size();
+        SearchOptions.Builder page = options.toBuilder().facets(pageFacets);
+        if (pageFilter != null) {
+            page.filter(pageFilter);
+        }
+        CompletableFuture<SearchResult> pageQuery = client.searchAsync(search, page.build());
+
+        SearchResult results = await(pageQuery, countQueries.values());
+        for (Map.Entry<String, CompletableFuture<SearchResult>> query : countQueries.entrySet()) {
+            counts.put(query.getKey(), facetValues(query.getValue().join(), query.getKey()));
+        }
+        for (Facet facet : facets.values()) {
+            if (!counts.containsKey(facet.name)) {
+                counts.put(facet.name, facetValues(results, facet.name));
+            }
+        }
+        if (cache != null) {
+            for (Map.Entry<String, String> cacheKey : cacheKeys.entrySet()) {
+                cache.put(cacheKey.getValue(), counts.get(cacheKey.getKey()));
+            }
+        }
+
+        Map<String, List<FacetNavigation.Bucket>> buckets = new LinkedHashMap<>();
+        for (Facet facet : facets.values()) {
+            Collection<SearchResult.FacetValue> selected = selections.get(facet.name);
+            buckets.put(facet.name, buckets(counts.get(facet.name),
+                                            selected != null ? selected : Collections.emptyList()));
+        }
+        return FacetNavigation.create(results, buckets, 1 + countQueries.size(), cachedFacets);
+    }
+
+    // Every value the service counted, then selected values it didn't return, with a count of 0
+    private static List<FacetNavigation.Bucket> buckets(SearchResult.FacetValue[] values,
+            Collection<SearchResult.FacetValue> selected) {
+        List<FacetNavigation.Bucket> buckets = new ArrayList<>(values.length + selected.size());
+        List<SearchResult.FacetValue> unmatched = new ArrayList<>(selected);
+        for (SearchResult.FacetValue value : values) {
+            boolean isSelected = unmatched.removeIf(s -> sameBucket(s, value));
+            buckets.add(FacetNavigation.Bucket.create(value, isSelected));
+        }
+        for (SearchResult.FacetValue value : unmatched) {
+            buckets.add(FacetNavigation.Bucket.create(
+                    SearchResult.FacetValue.create(value.value(), value.from(), value.to(), 0), true));
+        }
+        return buckets;
+    }
+
+    private static boolean sameBucket(SearchResult.FacetValue a, SearchResult.FacetValue b) {
+        return Objects.equals(a.value(), b.value()) && Objects.equals(a.from(), b.from())
+                && Objects.equals(a.to(), b.to());
+    }
+
+    private static SearchResult.FacetValue[] facetValues(SearchResult result, String facet) {
+        SearchResult.FacetValue[] values = result.facets() != null ? result.facets().get(facet) : null;
+        return values != null ? values : new SearchResult.FacetValue[0];
+    }
+
+    private static SearchOptions countOnly(SearchOptions options, String filter, String facet) {
+        SearchOptions.Builder builder = SearchOptions.builder()
+                .top(0)
+                .facets(Collections.singletonList(facet))
+                .requireAllTerms(options.requireAllTerms());
+        options.searchFields().ifPresent(builder::searchFields);
+        options.minimumCoverage().ifPresent(builder::minimumCoverage);
+        if (filter != null) {
+            builder.filter(filter);
+        }
+        return builder.build();
+    }
+
+    // the base filter and-ed with the selection clauses of every facet but "excluded"
+    private static String and(String baseFilter, Map<String, String> clauses, String excluded) {
+        StringBuilder filter = new StringBuilder();
+        if (baseFilter != null) {
+            filter.append('(').append(baseFilter).append(')');
+        }
+        for (Map.Entry<String, String> clause : clauses.entrySet()) {
+            if (!clause.getKey().equals(excluded)) {
+                filter.append(filter.length() > 0 ? " and " : "").append(clause.getValue());
+            }
+        }
+        return filter.length() > 0 ? filter.toString() : null;
+    }
+
+    // only what changes the set of matching documents
+    private static String cacheKey(String search, SearchOptions options, String filter, String facet) {
+        return search + '\n' + options.searchFields().orElse("") + '\n' + options.requireAllTerms() + '\n'
+                + (filter != null ? filter : "") + '\n' + facet;
+    }
+
+    private static SearchResult await(CompletableFuture<SearchResult> page,
+            Collection<CompletableFuture<SearchResult>> countQueries) throws IOException {
+        try {
+            for (CompletableFuture<SearchResult> query : countQueries) {
+                query.get();
+            }
+            return page.get();
+        } catch (InterruptedException e) {
+            page.cancel(false);
+            countQueries.forEach(query -> query.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for facet counts");
+        } catch (ExecutionException e) {
+            page.cancel(false);
+            countQueries.forEach(query -> query.cancel(false));
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Dates are returned as strings but are written without quotes in filters
+    private static String literal(Object value) {
+        return isDate(value) ? (String) value : FilterTemplate.literal(value);
+    }
+
+    private static boolean isDate(Object value) {
+        if (!(value instanceof String)) {
+            return false;
+        }
+        try {
+            OffsetDateTime.parse((String) value);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static class Facet {
+        // field path, the name the service reports the facet under
+        final String name;
+        // what is sent as facet=, the name and its parameters
+        final String expression;
+        // for fields of a collection, e.g. "Tags" or "Rooms" of "Rooms/BaseRate"
+        final String collection;
+        // the field within the collection's elements, "BaseRate" of "Rooms/BaseRate"
+        final String elementField;
+
+        Facet(String name, String parameters, String collection, String elementField) {
+            this.name = name;
+            this.expression = parameters == null || parameters.isEmpty() ? name : name + "," + parameters;
+            this.collection = collection;
+            this.elementField = elementField;
+        }
+
+        String filter(Collection<SearchResult.FacetValue> selected) {
+            String variable = collection == null ? name : elementField == null ? "v" : "v/" + elementField;
+            List<String> strings = new ArrayList<>();
+            List<String> terms = new ArrayList<>();
+            for (SearchResult.FacetValue value : selected) {
+                if (value.from() != null || value.to() != null) {
+                    terms.add(range(variable, value));
+                } else if (value.value() instanceof String && !isDate(value.value())) {
+                    strings.add((String) value.value());
+                } else {
+                    terms.add(variable + " eq " + literal(value.value()));
+                }
+            }
+            if (!strings.isEmpty()) {
+                terms.add(0, SearchIndexClient.keyFilter(variable, strings));
+            }
+            String clause = String.join(" or ", terms);
+            return collection == null ? "(" + clause + ")" : collection + "/any(v: " + clause + ")";
+        }
+
+        // ranges include "from" and exclude "to", either may be open
+        private static String range(String variable, SearchResult.FacetValue value) {
+            if (value.from() == null) {
+                return variable + " lt " + literal(value.to());
+            }
+            if (value.to() == null) {
+                return variable + " ge " + literal(value.from());
+            }
+            return "(" + variable + " ge " + literal(value.from()) + " and " + variable + " lt "
+                    + literal(value.to()) + ")";
+        }
+    }
+
+    // LRU of facet counts with a time to live
+    private static class FacetCache {
+        private final int maxEntries;
+        private final long ttlNanos;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+        FacetCache(int maxEntries, long ttlNanos) {
+            this.maxEntries = maxEntries;
+            this.ttlNanos = ttlNanos;
+        }
+
+        synchronized SearchResult.FacetValue[] get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtNanos - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.values;
+        }
+
+        synchronized void put(String key, SearchResult.FacetValue[] values) {
+            entries.put(key, new Entry(values, System.nanoTime() + ttlNanos));
+            Iterator<String> eldest = entries.keySet().iterator();
+            while (entries.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        private static class Entry {
+            final SearchResult.FacetValue[] values;
+            final long expiresAtNanos;
+
+            Entry(SearchResult.FacetValue[] values, long expiresAtNanos) {
+                this.values = values;
+                this.expiresAtNanos = expiresAtNanos;
+            }
+        }
+    }
+
+    public static class Builder {
+        private final SearchIndexClient client;
+        private final Map<String, Facet> facets = new LinkedHashMap<>();
+        private int cacheEntries = 1000;
+        private long cacheTtlNanos = TimeUnit.MINUTES.toNanos(1);
+
+        private Builder(SearchIndexClient client) {
+            this.client = client;
+        }
+
+        public Builder facet(String field) {
+            return facet(field, null);
+        }
+
+        // parameters as the service takes them after the field name, e.g. "count:20" or "values:100|200"
+        public Builder facet(String field, String parameters) {
+            facets.put(field, new Facet(field, parameters, null, null));
+            return this;
+        }
+
+        public Builder collectionFacet(String path) {
+            return collectionFacet(path, null);
+        }
+
+        // a string collection like "Tags", or a field of a complex collection like "Rooms/BaseRate"; selections are
+        // matched with any()
+        public Builder collectionFacet(String path, String parameters) {
+            int slash = path.indexOf('/');
+            facets.put(path, new Facet(path, parameters, slash < 0 ? path : path.substring(0, slash),
+                                       slash < 0 ? null : path.substring(slash + 1)));
+            return this;
+        }
+
+        // facet counts kept, 0 turns the cache off
+        public Builder cacheEntries(int cacheEntries) {
+            this.cacheEntries = cacheEntries;
+            return this;
+        }
+
+        public Builder cacheTtl(long ttl, TimeUnit unit) {
+            this.cacheTtlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        public FacetNavigator build() {
+            return new FacetNavigator(this);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.auto.value.AutoValue;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+ * Feeds a file of JSON objects into a BulkIndexer without loading it into the heap. The file can be newline
+ * delimited JSON or a single JSON array of objects; commas, brackets and whitespace between objects are skipped.
+ *
+ * The file is memory-mapped a window at a time. The calling thread only finds where each record starts and ends, a
+ * byte scan that tracks nesting and strings, and copies runs of records into chunks. A pool of parser threads turns
+ * chunks into serialized index operations, and the calling thread hands those to the indexer in file order. The
+ * parallel parsing doesn't reorder records, and BulkIndexer sends a batch only after any earlier batch with one of
+ * its keys is done, so of several records for a key the last one in the file ends up in the index. At most
+ * 2 * parallelism chunks are in memory at a time, and a BulkIndexer that waits for the service holds up parsing and
+ * reading in turn.
+ */
+public class FileIngestor {
+    private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+
+    private final BulkIndexer indexer;
+    private final ObjectReader reader;
+    private final Function<Object, IndexOperation> operation;
+    private final int parallelism;
+    private final int chunkBytes;
+    private final boolean skipMalformedRecords;
+    private final Consumer<Stats> progressListener;
+    private final long progressIntervalNanos;
+
+    private FileIngestor(Builder builder) {
+        this.indexer = builder.indexer;
+        this.reader = JsonCodecs.readerFor(builder.documentType);
+        this.operation = builder.operation;
+        this.parallelism = builder.parallelism;
+        this.chunkBytes = builder.chunkBytes;
+        this.skipMalformedRecords = builder.skipMalformedRecords;
+        this.progressListener = builder.progressListener;
+        this.progressIntervalNanos = builder.progressIntervalNanos;
+    }
+
+    public static Builder builder(BulkIndexer indexer) {
+        return new Builder(indexer);
+    }
+
+    // Reads the whole file and returns once every operation has been sent, see BulkIndexer.flush()
+    public Stats ingest(Path file) throws IOException {
+        Ingest ingest = new Ingest();
+        ExecutorService parsers = ClientExecutors.newWorkerPool("search-file-ingest", parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ingest.totalBytes = channel.size();
+            long position = 0;
+            while (position < ingest.totalBytes) {
+                int length = (int) Math.min(WINDOW_BYTES, ingest.totalBytes - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int offset = position == 0 ? byteOrderMarkLength(window) : 0;
+                while (offset < length) {
+                    Chunk chunk = new Chunk(position);
+                    int end = scan(window, offset, chunk, position);
+                    if (chunk.records > 0) {
+                        chunk.copy(window);
+                        ingest.submit(parsers.submit(() -> parse(chunk, ingest)), chunk);
+                    }
+                    if (end == offset) {
+                        break;
+                    }
+                    offset = end;
+                }
+                if (offset < length) {
+                    // the window ends inside a record, the next window starts with it
+                    if (position + length == ingest.totalBytes) {
+                        throw new IOException("The file ends inside the record at byte " + (position + offset));
+                    }
+                    if (offset == 0) {
+                        throw new IOException("The record at byte " + position + " is larger than "
+                                                      + WINDOW_BYTES + " bytes");
+                    }
+                }
+                position += offset;
+            }
+            ingest.drain(0);
+            indexer.flush();
+            ingest.bytesRead = ingest.totalBytes;
+            return ingest.stats();
+        } finally {
+            ingest.cancel();
+            parsers.shutdownNow();
+        }
+    }
+
+    // Scans complete records from "from" into the chunk until it holds chunkBytes or the window ends. Returns the
+    // offset after the last complete record and the separators that follow it.
+    private int scan(ByteBuffer window, int from, Chunk chunk, long windowPosition) throws IOException {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int recordStart = -1;
+        int boundary = from;
+        for (int i = from; i < window.limit(); i++) {
+            byte b = window.get(i);
+            if (depth == 0) {
+                if (b == '{') {
+                    recordStart = i;
+                    depth = 1;
+                } else if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ',' || b == '[' || b == ']') {
+                    boundary = i + 1;
+                } else {
+                    throw new IOException("Expected a JSON object at byte " + (windowPosition + i));
+                }
+            } else if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                chunk.add(recordStart, i + 1);
+                boundary = i + 1;
+                if (boundary - chunk.start >= chunkBytes) {
+                    return boundary;
+                }
+            }
+        }
+        return boundary;
+    }
+
+    private List<BulkIndexer.PendingOperation> parse(Chunk chunk, Ingest ingest) throws IOException {
+        List<BulkIndexer.PendingOperation> operations = new ArrayList<>(chunk.records);
+        for (int i = 0; i < chunk.records; i++) {
+            int start = chunk.starts[i];
+            int length = chunk.ends[i] - start;
+            try {
+                Object document = reader.readValue(chunk.data, start - chunk.start, length);
+                operations.add(indexer.serialize(operation.apply(document)));
+            } catch (IOException e) {
+                if (!skipMalformedRecords) {
+                    String message = e instanceof JsonProcessingException
+                            ? ((JsonProcessingException) e).getOriginalMessage()
+                            : e.getMessage();
+                    throw new IOException("Can't index the record at byte " + (chunk.filePosition + start) + ": "
+                                                  + message, e);
+                }
+                ingest.malformedRecords.increment();
+            }
+        }
+        return operations;
+    }
+
+    private static int byteOrderMarkLength(ByteBuffer window) {
+        return window.limit() >= 3 && (window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB
+                && (window.get(2) & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+    // Records of one chunk, offsets relative to the window they were found in
+    private static class Chunk {
+        final long filePosition;
+        int[] starts = new int[256];
+        int[] ends = new int[256];
+        int records;
+        int start = -1;
+        int end;
+        byte[] data;
+
+        Chunk(long windowPosition) {
+            this.filePosition = windowPosition;
+        }
+
+        void add(int recordStart, int recordEnd) {
+            if (records == starts.length) {
+                starts = Arrays.copyOf(starts, records * 2);
+                ends = Arrays.copyOf(ends, records * 2);
+            }
+            if (start < 0) {
+                start = recordStart;
+            }
+            starts[records] = recordStart;
+            ends[records] = recordEnd;
+            end = recordEnd;
+            records++;
+        }
+
+        void copy(ByteBuffer window) {
+            ByteBuffer range = window.duplicate();
+            range.position(start);
+            data = new byte[end - start];
+            range.get(data);
+        }
+    }
+
+    // State of one ingest() call
+    private class Ingest {
+        final long startNanos = System.nanoTime();
+        final ArrayDeque<Future<List<BulkIndexer.PendingOperation>>> parsed = new ArrayDeque<>();
+        final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+        final LongAdder malformedRecords = new LongAdder();
+        long totalBytes;
+        long bytesRead;
+        long records;
+        long lastProgressNanos = startNanos;
+
+        void submit(Future<List<BulkIndexer.PendingOperation>> future, Chunk chunk) throws IOException {
+            parsed.add(future);
+            chunks.add(chunk);
+            drain(2 * parallelism);
+        }
+
+        // hands parsed chunks to the indexer, in order, until at most "keep" are left
+        void drain(int keep) throws IOException {
+            while (parsed.size() > keep) {
+                List<BulkIndexer.PendingOperation> operations;
+                try {
+                    operations = parsed.peek().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while parsing records");
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException
+                            ? (IOException) e.getCause()
+                            : new IOException(e.getCause().getMessage(), e.getCause());
+                }
+                parsed.remove();
+                Chunk chunk = chunks.remove();
+                for (BulkIndexer.PendingOperation operation : operations) {
+                    indexer.add(operation);
+                }
+                records += operations.size();
+                bytesRead = chunk.filePosition + chunk.end;
+                reportProgress();
+            }
+        }
+
+        void reportProgress() {
+            long now = System.nanoTime();
+            if (progressListener != null && now - lastProgressNanos >= progressIntervalNanos) {
+                lastProgressNanos = now;
+                progressListener.accept(stats());
+            }
+        }
+
+        void cancel() {
+            for (Future<?> future : parsed) {
+                future.cancel(true);
+            }
+        }
+
+        Stats stats() {
+            return Stats.create(bytesRead, totalBytes, records, malformedRecords.sum(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+        // up to the end of the last record handed to the indexer
+        public abstract long bytesRead();
+
+        public abstract long totalBytes();
+
+        public abstract long records();
+
+        public abstract long malformedRecords();
+
+        public abstract long elapsedMillis();
+
+        public double fractionDone() {
+            return totalBytes() == 0 ? 1 : (double) bytesRead() / totalBytes();
+        }
+
+        public double recordsPerSecond() {
+            return elapsedMillis() == 0 ? 0 : records() * 1000.0 / elapsedMillis();
+        }
+
+        public double megabytesPerSecond() {
+            return elapsedMillis() == 0 ? 0 : bytesRead() / 1024.0 / 1024.0 * 1000.0 / elapsedMillis();
+        }
+
+        static Stats create(long bytesRead, long totalBytes, long records, long malformedRecords,
+                long elapsedMillis) {
+            return new com.microsoft.azure.search.samples.client.AutoValue_FileIngestor_Stats(bytesRead, totalBytes,
+                                                                                              records,
+                                                                                              malformedRecords,
+                                                                                              elapsedMillis);
+        }
+    }
+
+    public static class Builder {
+        private final BulkIndexer indexer;
+        private Class<?> documentType = Map.class;
+        private Function<Object, IndexOperation> operation = IndexOperation::uploadOperation;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int chunkBytes = 1024 * 1024;
+        private boolean skipMalformedRecords;
+        private Consumer<Stats> progressListener;
+        private long progressIntervalNanos = TimeUnit.SECONDS.toNanos(5);
+
+        private Builder(BulkIndexer indexer) {
+            this.indexer = indexer;
+        }
+
+        // records are bound to this type, e.g. Hotel.class, and maps by default
+        public Builder documentType(Class<?> documentType) {
+            this.documentType = documentType;
+            return this;
+        }
+
+        // turns a parsed record into its index operation, an upload by default
+        public Builder operation(Function<Object, IndexOperation> operation) {
+            this.operation = operation;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        // records are parsed in chunks of about this size
+        public Builder chunkBytes(int chunkBytes) {
+            this.chunkBytes = chunkBytes;
+            return this;
+        }
+
+        // count and skip records that can't be parsed or have no key, instead of failing the ingest
+        public Builder skipMalformedRecords(boolean skipMalformedRecords) {
+            this.skipMalformedRecords = skipMalformedRecords;
+            return this;
+        }
+
+        // called from the ingesting thread at most once per progress interval
+        public Builder progressListener(Consumer<Stats> progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public Builder progressInterval(long interval, TimeUnit unit) {
+            this.progressIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public FileIngestor build() {
+            return new FileIngestor(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.microsoft.azure.search.samples.client;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * A $filter with {0}, {1}, ... placeholders, url-encoded once. URLEncoder encodes character by character, so the
+ * encoded pieces with encoded arguments in between read exactly like the encoded filter with the arguments filled
+ * in. Braces around a number are always a placeholder, also inside a quoted string.
+ */
+class FilterTemplate {
+    private static final FilterTemplate NONE = new FilterTemplate(new String[0], new int[0]);
+    // how URLEncoder writes "{" + digits + "}"
+    private static final Pattern PLACEHOLDER = Pattern.compile("%7B(\\d+)%7D");
+
+    // url-encoded text before, between and after the placeholders, starting with "&$filter="
+    private final String[] segments;
+    private final int[] placeholders;
+    private final int arity;
+
+    private FilterTemplate(String[] segments, int[] placeholders) {
+        this.segments = segments;
+        this.placeholders = placeholders;
+        int max = -1;
+        for (int placeholder : placeholders) {
+            max = Math.max(max, placeholder);
+        }
+        this.arity = max + 1;
+    }
+
+    static FilterTemplate parse(@Nullable String filter) throws IOException {
+        if (filter == null) {
+            return NONE;
+        }
+        List<String> segments = new ArrayList<>();
+        List<Integer> placeholders = new ArrayList<>();
+        String encoded = "&$filter=" + URLEncoder.encode(filter, "UTF-8");
+        Matcher matcher = PLACEHOLDER.matcher(encoded);
+        int start = 0;
+        while (matcher.find()) {
+            segments.add(encoded.substring(start, matcher.start()));
+            placeholders.add(Integer.parseInt(matcher.group(1)));
+            start = matcher.end();
+        }
+        segments.add(encoded.substring(start));
+        int[] indexes = new int[placeholders.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = placeholders.get(i);
+        }
+        return new FilterTemplate(segments.toArray(new String[0]), indexes);
+    }
+
+    int arity() {
+        return arity;
+    }
+
+    void appendTo(StringBuilder url, Object[] arguments) throws IOException {
+        if (arguments.length != arity) {
+            throw new IllegalArgumentException("The filter takes " + arity + " arguments, got " + arguments.length);
+        }
+        if (segments.length == 0) {
+            return;
+        }
+        url.append(segments[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            url.append(URLEncoder.encode(literal(arguments[placeholders[i]]), "UTF-8")).append(segments[i + 1]);
+        }
+    }
+
+    // Writes a value the way OData expects it in a filter expression
+    static String literal(@Nullable Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String || value instanceof Character) {
+            return "'" + value.toString().replace("'", "''") + "'";
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof TemporalAccessor) {
+            return value.toString();
+        }
+        throw new IllegalArgumentException("Can't write a " + value.getClass().getName() + " as an OData literal");
+    }
+}
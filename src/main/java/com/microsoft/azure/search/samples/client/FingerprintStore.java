@@ -0,0 +1,309 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/*
+ * Document key -> content fingerprint table of the last indexing run, kept in a file next to the job.
+ *
+ * The file is a plain sequence of entries: a 2 byte key length, the UTF-8 key and an 8 byte fingerprint. It is
+ * memory-mapped rather than read, and the only heap used is one open addressing table of longs, 11 to 22 bytes per
+ * key, so tens of millions of keys fit in a few hundred MB. A slot holds the file offset of its entry, a "seen in
+ * this run" bit and a few bits of the key's hash, which rule out most mismatches without touching the file.
+ *
+ * Each run's entries are written to a new generation file, "<path>.<generation>", and "path" itself only holds the
+ * name of the current one. commit() switches that pointer over with an atomic rename and then deletes the old
+ * generation. The old file is never replaced while it is still mapped, which Windows doesn't allow; if deleting it
+ * fails for the same reason, the next open() does it. A store that is closed without committing leaves the previous
+ * run's file as it was. When a key appears more than once in a file, the last entry wins.
+ */
+public class FingerprintStore implements Closeable {
+    // stands for "not known", the next run treats the document as changed
+    static final long UNKNOWN = 0;
+
+    // entries never straddle segments: each one is mapped with enough overlap to hold the longest entry
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+    private static final int MAX_ENTRY_BYTES = 2 + MAX_KEY_BYTES + 8;
+
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long SEEN = 1L << OFFSET_BITS;
+    private static final int TAG_SHIFT = OFFSET_BITS + 1;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path path;
+    private final Path currentPath;
+    private final Path nextPath;
+    private final MappedByteBuffer[] segments;
+    private final long[] slots;
+    private final int previousKeys;
+    private final DataOutputStream next;
+    private boolean closed;
+
+    private FingerprintStore(Path path, Path currentPath, long generation, MappedByteBuffer[] segments, long size)
+            throws IOException {
+        this.path = path;
+        this.currentPath = currentPath;
+        this.nextPath = generationPath(path, generation + 1);
+        this.segments = segments;
+
+        // one pass to count the entries and size the table, a second one to fill it
+        long entries = 0;
+        for (long offset = 0; offset < size; offset = nextEntry(offset, size)) {
+            entries++;
+        }
+        long capacity = Math.max(16, Long.highestOneBit(entries + entries / 3) << 1);
+        if (capacity > 1 << 30) {
+            throw new IOException("Fingerprint file " + currentPath + " has too many entries");
+        }
+        this.slots = new long[(int) capacity];
+        int keys = 0;
+        for (long offset = 0; offset < size; offset = nextEntry(offset, size)) {
+            byte[] key = keyBytes(offset);
+            long hash = hash(key);
+            int slot = find(hash, key);
+            if (slots[slot] == 0) {
+                keys++;
+            }
+            slots[slot] = (hash >>> TAG_SHIFT) << TAG_SHIFT | (offset + 1);
+        }
+        this.previousKeys = keys;
+        this.next = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(nextPath), 1 << 16));
+    }
+
+    // Maps the fingerprints of the last run committed to "path", if there are any
+    public static FingerprintStore open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            deleteOtherGenerations(path, null);
+            return new FingerprintStore(path, null, 0, new MappedByteBuffer[0], 0);
+        }
+        String name = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        long generation = generation(path, name);
+        if (generation < 0) {
+            throw new IOException(path + " doesn't name a fingerprint file: " + name);
+        }
+        Path currentPath = path.resolveSibling(name);
+        deleteOtherGenerations(path, currentPath);
+        try (FileChannel channel = FileChannel.open(currentPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > OFFSET_MASK) {
+                throw new IOException("Fingerprint file " + currentPath + " is too large");
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                          Math.min(SEGMENT_BYTES + MAX_ENTRY_BYTES, size - start));
+            }
+            // the mapping stays valid once the channel is closed
+            return new FingerprintStore(path, currentPath, generation, segments, size);
+        }
+    }
+
+    public int previousKeys() {
+        return previousKeys;
+    }
+
+    // Returns the fingerprint the key had in the last run, or UNKNOWN, and records its fingerprint for this run
+    public synchronized long update(String key, long fingerprint) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        append(keyBytes, fingerprint);
+        int slot = find(hash(keyBytes), keyBytes);
+        if (slots[slot] == 0) {
+            return UNKNOWN;
+        }
+        slots[slot] |= SEEN;
+        long offset = (slots[slot] & OFFSET_MASK) - 1;
+        return segment(offset).getLong(position(offset) + 2 + keyLength(offset));
+    }
+
+    // Records that the key's fingerprint in this run isn't known, e.g. because indexing it failed
+    public synchronized void forget(String key) throws IOException {
+        append(key.getBytes(StandardCharsets.UTF_8), UNKNOWN);
+    }
+
+    // Keys of the last run that update() hasn't been called for in this one
+    public synchronized void forEachUnseen(Consumer<String> action) {
+        for (long slot : slots) {
+            if (slot != 0 && (slot & SEEN) == 0) {
+                action.accept(new String(keyBytes((slot & OFFSET_MASK) - 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    // Carries the fingerprints of the unseen keys over to this run
+    public synchronized void keepUnseen() throws IOException {
+        for (long slot : slots) {
+            if (slot != 0 && (slot & SEEN) == 0) {
+                long offset = (slot & OFFSET_MASK) - 1;
+                byte[] key = keyBytes(offset);
+                append(key, segment(offset).getLong(position(offset) + 2 + key.length));
+            }
+        }
+    }
+
+    // Replaces the last run's fingerprints with this run's
+    public synchronized void commit() throws IOException {
+        if (closed) {
+            throw new IOException("Fingerprint store is closed");
+        }
+        closed = true;
+        next.flush();
+        try (FileChannel channel = FileChannel.open(nextPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        next.close();
+
+        Path pointer = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(pointer, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(nextPath.getFileName().toString().getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(pointer, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (currentPath != null) {
+            try {
+                Files.deleteIfExists(currentPath);
+            } catch (IOException e) {
+                // still mapped, the next open() deletes it
+            }
+        }
+    }
+
+    // Discards this run's fingerprints unless commit() was called
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            next.close();
+        } finally {
+            Files.deleteIfExists(nextPath);
+        }
+    }
+
+    private void append(byte[] keyBytes, long fingerprint) throws IOException {
+        if (closed) {
+            throw new IOException("Fingerprint store is closed");
+        }
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            throw new IOException("Document key is longer than " + MAX_KEY_BYTES + " bytes");
+        }
+        next.writeShort(keyBytes.length);
+        next.write(keyBytes);
+        next.writeLong(fingerprint);
+    }
+
+    // Linear probing; returns the slot of the key, or the empty slot where it would go
+    private int find(long hash, byte[] key) {
+        int mask = slots.length - 1;
+        long tag = hash >>> TAG_SHIFT;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == 0 || (slot >>> TAG_SHIFT == tag && sameKey((slot & OFFSET_MASK) - 1, key))) {
+                return i;
+            }
+        }
+    }
+
+    private boolean sameKey(long offset, byte[] key) {
+        if (keyLength(offset) != key.length) {
+            return false;
+        }
+        MappedByteBuffer segment = segment(offset);
+        int start = position(offset) + 2;
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long nextEntry(long offset, long size) throws IOException {
+        if (size - offset < 2 || size - offset < 2 + keyLength(offset) + 8) {
+            throw new IOException("Fingerprint file " + currentPath + " is truncated at byte " + offset);
+        }
+        return offset + 2 + keyLength(offset) + 8;
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    private static int position(long offset) {
+        return (int) (offset & (SEGMENT_BYTES - 1));
+    }
+
+    private int keyLength(long offset) {
+        return segment(offset).getShort(position(offset)) & 0xFFFF;
+    }
+
+    private byte[] keyBytes(long offset) {
+        byte[] bytes = new byte[keyLength(offset)];
+        MappedByteBuffer segment = segment(offset).duplicate();
+        segment.position(position(offset) + 2);
+        segment.get(bytes);
+        return bytes;
+    }
+
+    private static Path generationPath(Path path, long generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    // the generation of a file named "<path>.<generation>", -1 for any other name
+    private static long generation(Path path, String name) {
+        String prefix = path.getFileName() + ".";
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() > prefix.length() + 18) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    // generations left behind by a run that failed to delete its old one, or that was never committed
+    private static void deleteOtherGenerations(Path path, Path currentPath) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                directory, file -> generation(path, file.getFileName().toString()) >= 0)) {
+            for (Path file : files) {
+                if (currentPath == null || !file.getFileName().equals(currentPath.getFileName())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // FNV-1a, with the MurmurHash3 finalizer to spread it into the low bits used for the slot index
+    private static long hash(byte[] key) {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : key) {
+            h = (h ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,283 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Hedged reads: when a search, suggest or lookup request hasn't answered within the hedge delay a second,
+ * identical request is sent and whichever succeeds first is used. The delay is either fixed or follows a
+ * percentile of the latencies recently observed per operation. Hedges are paid for from a budget that grows with
+ * every request by budgetRatio, so they can never add more than that share of load.
+ *
+ * The first attempt runs on the calling thread. Hedges run on a pool of the client's maxInFlight threads that only
+ * starts threads once hedges are sent, and the attempt that loses is aborted along with its connection.
+ *
+ * Index batches are never hedged, they are not idempotent.
+ */
+public class HedgingPolicy {
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int MIN_SAMPLES_FOR_PERCENTILE = 100;
+    private static final int PERCENTILE_REFRESH_INTERVAL = 128;
+    private static final double MAX_BUDGET_TOKENS = 10;
+
+    private final long fixedDelayNanos;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double budgetRatio;
+    private final Map<OperationType, LatencyWindow> latencies = new EnumMap<>(OperationType.class);
+    private double budgetTokens;
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private HedgingPolicy(Builder builder) {
+        this.fixedDelayNanos = builder.fixedDelayNanos;
+        this.percentile = builder.percentile;
+        this.minDelayNanos = builder.minDelayNanos;
+        this.budgetRatio = builder.budgetRatio;
+        for (OperationType operation : OperationType.values()) {
+            latencies.put(operation, new LatencyWindow());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long hedgesSent() {
+        return hedgesSent.get();
+    }
+
+    public long hedgeWins() {
+        return hedgeWins.get();
+    }
+
+    // the delay after which the next request of this kind would be hedged
+    public long currentDelayMillis(OperationType operation) {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos(operation));
+    }
+
+    // Runs the attempt on the calling thread and, if it hasn't answered within the hedge delay, a second one on
+    // hedgeExecutor. Whichever loses is aborted.
+    <T> T execute(OperationType operation, SearchIndexClient.RetriableHttpOperation<T> attempt,
+            ExecutorService hedgeExecutor) throws IOException {
+        addBudget();
+        long start = System.nanoTime();
+        Race<T> race = new Race<>();
+        ScheduledFuture<?> timer = ClientExecutors.sharedScheduler().schedule(
+                () -> hedge(attempt, hedgeExecutor, race), hedgeDelayNanos(operation), TimeUnit.NANOSECONDS);
+        T value;
+        try {
+            value = race.primary.run(attempt);
+        } catch (IOException | RuntimeException e) {
+            timer.cancel(false);
+            if (!race.settle()) {
+                throw e;
+            }
+            // the primary only waits for the hedge if the hedge aborted it, not if the whole call was cancelled
+            if (!race.primary.isCancelled() || race.hedge.isCancelled()) {
+                race.fail(e);
+            }
+            try {
+                return await(race.result);
+            } catch (IOException interruptedOrBothFailed) {
+                race.hedge.cancel();
+                throw interruptedOrBothFailed;
+            }
+        }
+        timer.cancel(false);
+        latencies.get(operation).record(System.nanoTime() - start);
+        race.settle();
+        if (race.result.complete(value)) {
+            race.hedge.cancel();
+            return value;
+        }
+        // the hedge answered while this one was finishing
+        return await(race.result);
+    }
+
+    // runs on the timer once the primary attempt is late
+    private <T> void hedge(SearchIndexClient.RetriableHttpOperation<T> attempt, ExecutorService hedgeExecutor,
+            Race<T> race) {
+        if (!tryTakeBudget()) {
+            return;
+        }
+        if (!race.startHedge()) {
+            returnBudget();
+            return;
+        }
+        hedgesSent.incrementAndGet();
+        CallMetrics call = CallMetrics.current();
+        try {
+            hedgeExecutor.execute(() -> {
+                CallMetrics previous = CallMetrics.bind(call);
+                try {
+                    T value = race.hedge.run(attempt);
+                    if (race.result.complete(value)) {
+                        hedgeWins.incrementAndGet();
+                        race.primary.cancel();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    race.fail(e);
+                } finally {
+                    CallMetrics.bind(previous);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            race.fail(new IOException("Client closed", e));
+        }
+    }
+
+    private long hedgeDelayNanos(OperationType operation) {
+        if (percentile <= 0) {
+            return fixedDelayNanos;
+        }
+        long observed = latencies.get(operation).percentile(percentile);
+        return observed < 0 ? fixedDelayNanos : Math.max(observed, minDelayNanos);
+    }
+
+    private synchronized void addBudget() {
+        budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean tryTakeBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens--;
+        return true;
+    }
+
+    private synchronized void returnBudget() {
+        budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + 1);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    // The primary attempt and its hedge, if one was sent. The first to succeed completes the result and aborts the
+    // other; the result only fails once both have failed.
+    private static class Race<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Cancellation primary = Cancellation.linked();
+        final Cancellation hedge = Cancellation.linked();
+        private final AtomicInteger failures = new AtomicInteger();
+        private boolean settled;
+        private boolean hedged;
+
+        // false once the primary attempt is done, it's too late for a hedge then
+        synchronized boolean startHedge() {
+            if (settled) {
+                return false;
+            }
+            hedged = true;
+            return true;
+        }
+
+        // marks the primary attempt as done, returns whether a hedge was sent
+        synchronized boolean settle() {
+            settled = true;
+            return hedged;
+        }
+
+        void fail(Throwable error) {
+            if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static class LatencyWindow {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int count;
+        private int recordedSinceRefresh;
+        private long cachedPercentile = -1;
+        private double cachedFor;
+
+        synchronized void record(long nanos) {
+            samples[count % LATENCY_SAMPLES] = nanos;
+            count++;
+            recordedSinceRefresh++;
+        }
+
+        // -1 until enough samples are available
+        synchronized long percentile(double p) {
+            int size = Math.min(count, LATENCY_SAMPLES);
+            if (size < MIN_SAMPLES_FOR_PERCENTILE) {
+                return -1;
+            }
+            if (cachedPercentile < 0 || cachedFor != p || recordedSinceRefresh >= PERCENTILE_REFRESH_INTERVAL) {
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                cachedPercentile = sorted[Math.min(size - 1, (int) Math.ceil(p * size) - 1)];
+                cachedFor = p;
+                recordedSinceRefresh = 0;
+            }
+            return cachedPercentile;
+        }
+    }
+
+    public static class Builder {
+        private long fixedDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private double percentile;
+        private long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private double budgetRatio = 0.05;
+
+        private Builder() {
+        }
+
+        // hedge after a fixed delay, also used while too few latencies were seen for percentileDelay
+        public Builder delay(long delay, TimeUnit unit) {
+            this.fixedDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        // hedge once a request is slower than this percentile (e.g. 0.95) of recent requests of its kind
+        public Builder percentileDelay(double percentile, long minDelay, TimeUnit unit) {
+            if (percentile <= 0 || percentile >= 1) {
+                throw new IllegalArgumentException("percentile must be between 0 and 1");
+            }
+            this.percentile = percentile;
+            this.minDelayNanos = unit.toNanos(minDelay);
+            return this;
+        }
+
+        // share of requests that may be hedged, e.g. 0.05 for at most 5% extra load
+        public Builder budgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.net.ConnectException;
+
+/*
+ * An error status returned by the service. Extends ConnectException, which is what HTTP errors have always been
+ * reported as, while letting retry logic tell them apart from connections that actually failed.
+ */
+public class HttpErrorException extends ConnectException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpErrorException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+}
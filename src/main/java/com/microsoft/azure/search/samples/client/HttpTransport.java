@@ -0,0 +1,32 @@
+package com.microsoft.azure.search.samples.client;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/*
+ * The HTTP layer used by SearchIndexClient. Implementations must be safe for concurrent use; a response has to be
+ * closed by the caller so that the underlying connection can go back to the pool.
+ */
+public interface HttpTransport extends Closeable {
+    Response execute(String method, String url, Map<String, String> headers, @Nullable RequestBody body)
+            throws IOException;
+
+    interface RequestBody {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    interface Response extends Closeable {
+        int statusCode();
+
+        String reasonPhrase();
+
+        @Nullable
+        String header(String name);
+
+        InputStream body() throws IOException;
+    }
+}
@@ -0,0 +1,174 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.google.auto.value.AutoValue;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.results.IndexBatchOperationResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+ * For jobs that push the full set of documents on every run: each document is fingerprinted, and only documents
+ * that are new or whose fingerprint differs from the last run are uploaded. finish() deletes the documents of the
+ * last run that weren't added in this one, then commits the fingerprints for the next run.
+ *
+ *   try (FingerprintStore store = FingerprintStore.open(Paths.get("hotels.fingerprints"));
+ *        BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").build()) {
+ *       IncrementalIndexer incremental = IncrementalIndexer.builder(indexer, store).build();
+ *       incremental.addAll(hotels);
+ *       incremental.finish();
+ *   }
+ *
+ * The fingerprint is a hash of the document serialized with map entries and properties sorted, so it doesn't
+ * depend on map iteration order. Documents that fail to index are recorded with an unknown fingerprint and are
+ * sent again by the next run. add() can be called from several threads.
+ */
+public class IncrementalIndexer {
+    private static final byte[] UPLOAD_PREFIX = "{\"@search.action\":\"upload\",".getBytes(StandardCharsets.UTF_8);
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            // only detects changes, collisions between different documents don't matter
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements MD5
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final BulkIndexer indexer;
+    private final FingerprintStore store;
+    private final boolean deleteMissing;
+
+    private final LongAdder documentsAdded = new LongAdder();
+    private final LongAdder documentsChanged = new LongAdder();
+    private final LongAdder documentsUnchanged = new LongAdder();
+    private final LongAdder documentsDeleted = new LongAdder();
+
+    private IncrementalIndexer(Builder builder) {
+        this.indexer = builder.indexer;
+        this.store = builder.store;
+        this.deleteMissing = builder.deleteMissing;
+    }
+
+    public static Builder builder(BulkIndexer indexer, FingerprintStore store) {
+        return new Builder(indexer, store);
+    }
+
+    public void add(Object document) throws IOException {
+        byte[] json = JsonCodecs.CANONICAL.writeValueAsBytes(document);
+        String key = indexer.extractKey(json);
+        long fingerprint = fingerprint(json);
+        long previous = store.update(key, fingerprint);
+        if (previous == fingerprint) {
+            documentsUnchanged.increment();
+            return;
+        }
+        (previous == FingerprintStore.UNKNOWN ? documentsAdded : documentsChanged).increment();
+        indexer.add(new BulkIndexer.PendingOperation(key, uploadOperation(json)));
+    }
+
+    public void addAll(Iterable<?> documents) throws IOException {
+        for (Object document : documents) {
+            add(document);
+        }
+    }
+
+    public void addAll(Stream<?> documents) throws IOException {
+        Iterator<?> iterator = documents.iterator();
+        while (iterator.hasNext()) {
+            add(iterator.next());
+        }
+    }
+
+    // Deletes the documents that weren't added in this run, waits for the indexer and commits the fingerprints
+    public Stats finish() throws IOException {
+        if (deleteMissing) {
+            List<String> missing = new ArrayList<>();
+            store.forEachUnseen(missing::add);
+            for (String key : missing) {
+                indexer.add(IndexOperation.deleteOperation(indexer.keyField(), key));
+                documentsDeleted.increment();
+            }
+        } else {
+            store.keepUnseen();
+        }
+        indexer.flush();
+        List<IndexBatchOperationResult> failures = indexer.failures();
+        for (IndexBatchOperationResult failure : failures) {
+            store.forget(failure.key());
+        }
+        store.commit();
+        return Stats.create(documentsAdded.sum(), documentsChanged.sum(), documentsUnchanged.sum(),
+                            documentsDeleted.sum(), failures.size());
+    }
+
+    // the document's JSON with the upload action spliced in, as BulkIndexer would have serialized it
+    private static byte[] uploadOperation(byte[] document) {
+        byte[] operation = new byte[UPLOAD_PREFIX.length + document.length - 1];
+        System.arraycopy(UPLOAD_PREFIX, 0, operation, 0, UPLOAD_PREFIX.length);
+        System.arraycopy(document, 1, operation, UPLOAD_PREFIX.length, document.length - 1);
+        return operation;
+    }
+
+    private static long fingerprint(byte[] json) {
+        byte[] digest = DIGEST.get().digest(json);
+        long fingerprint = 0;
+        for (int i = 0; i < 8; i++) {
+            fingerprint = fingerprint << 8 | (digest[i] & 0xFF);
+        }
+        return fingerprint == FingerprintStore.UNKNOWN ? 1 : fingerprint;
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+        // keys the last run didn't have or failed to index
+        public abstract long documentsAdded();
+
+        public abstract long documentsChanged();
+
+        // skipped, they have the same fingerprint as in the last run
+        public abstract long documentsUnchanged();
+
+        public abstract long documentsDeleted();
+
+        // uploads and deletes that failed, they are sent again by the next run
+        public abstract long documentsFailed();
+
+        static Stats create(long documentsAdded, long documentsChanged, long documentsUnchanged,
+                long documentsDeleted, long documentsFailed) {
+            return new com.microsoft.azure.search.samples.client.AutoValue_IncrementalIndexer_Stats(documentsAdded,
+                                                                                                    documentsChanged,
+                                                                                                    documentsUnchanged,
+                                                                                                    documentsDeleted,
+                                                                                                    documentsFailed);
+        }
+    }
+
+    public static class Builder {
+        private final BulkIndexer indexer;
+        private final FingerprintStore store;
+        private boolean deleteMissing = true;
+
+        private Builder(BulkIndexer indexer, FingerprintStore store) {
+            this.indexer = indexer;
+            this.store = store;
+        }
+
+        // when false, documents of the last run that weren't added are kept, e.g. for runs over part of the data
+        public Builder deleteMissing(boolean deleteMissing) {
+            this.deleteMissing = deleteMissing;
+            return this;
+        }
+
+        public IncrementalIndexer build() {
+            return new IncrementalIndexer(this);
+        }
+    }
+}
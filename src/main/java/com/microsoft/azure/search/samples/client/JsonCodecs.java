@@ -0,0 +1,72 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.results.IndexBatchResult;
+import com.microsoft.azure.search.samples.results.SearchResult;
+import com.microsoft.azure.search.samples.results.SuggestResult;
+
+import java.util.Map;
+
+/*
+ * The JSON configuration shared by every client, indexer and parser in this package. The mappers are configured
+ * here, once, and are never handed out: all reading and writing goes through ObjectReader and ObjectWriter, which
+ * are immutable, so a request can't change the configuration another thread is serializing with. Readers and
+ * writers for the fixed request and response types are created up front, which also saves looking up the root
+ * (de)serializer on every call. Code outside this package, like the demo, reads documents through Documents.
+ */
+final class JsonCodecs {
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+    // the index classes have no annotations on their accessors, the fields of the generated AutoValue classes are
+    // written instead, so their writer goes by the runtime class rather than the abstract one
+    private static final ObjectMapper DEFINITION_MAPPER = MAPPER.copy()
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+    // map entries and properties sorted, so equal documents serialize to equal bytes whatever the map's order
+    private static final ObjectMapper CANONICAL_MAPPER = MAPPER.copy()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+    static final ObjectReader SEARCH_RESULT = MAPPER.readerFor(SearchResult.class);
+    static final ObjectReader SUGGEST_RESULT = MAPPER.readerFor(SuggestResult.class);
+    static final ObjectReader INDEX_BATCH_RESULT = MAPPER.readerFor(IndexBatchResult.class);
+    static final ObjectReader DOCUMENT = MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
+    static final ObjectReader TREE = MAPPER.reader();
+    static final ObjectWriter INDEX_DEFINITION = DEFINITION_MAPPER.writer();
+    static final ObjectWriter INDEX_OPERATION = MAPPER.writerFor(IndexOperation.class);
+    static final ObjectWriter CANONICAL = CANONICAL_MAPPER.writer();
+
+    private JsonCodecs() {
+    }
+
+    static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    static ObjectReader readerFor(TypeReference<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    static ObjectWriter writerFor(Class<?> type) {
+        return MAPPER.writerFor(type);
+    }
+
+    // for streaming parsers, the factory is thread-safe once configured
+    static JsonFactory factory() {
+        return MAPPER.getFactory();
+    }
+
+    // how Jackson sees the properties of a type, for reading values without serializing
+    static BeanDescription introspect(Class<?> type) {
+        return MAPPER.getSerializationConfig().introspect(MAPPER.constructType(type));
+    }
+}
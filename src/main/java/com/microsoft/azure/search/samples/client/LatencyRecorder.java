@@ -0,0 +1,227 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Keeps a latency histogram and throughput counters per operation. Recording is a handful of atomic increments,
+ * no locks and no allocation, so it can sit on the hot path of every call.
+ *
+ * The histogram works like HdrHistogram with two significant binary digits less: latencies are recorded in
+ * microseconds into log-linear buckets, 32 per power of two, so every percentile is within about 3% of the true
+ * value. snapshot() can be called at any time, e.g. periodically for a dump; snapshotAndReset() starts a new
+ * interval.
+ */
+public class LatencyRecorder implements ClientMetrics {
+    private final Map<OperationType, OperationStats> stats = new EnumMap<>(OperationType.class);
+
+    public LatencyRecorder() {
+        for (OperationType operation : OperationType.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    @Override
+    public void onCall(CallResult result) {
+        stats.get(result.operation()).record(result);
+    }
+
+    // records a latency measured outside the client, e.g. by a load generator from the intended start of a request
+    public void record(OperationType operation, long latencyNanos, boolean succeeded) {
+        stats.get(operation).record(latencyNanos, succeeded);
+    }
+
+    public Snapshot snapshot(OperationType operation) {
+        return stats.get(operation).snapshot(false);
+    }
+
+    public Map<OperationType, Snapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    public Map<OperationType, Snapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private Map<OperationType, Snapshot> snapshot(boolean reset) {
+        Map<OperationType, Snapshot> snapshots = new EnumMap<>(OperationType.class);
+        for (Map.Entry<OperationType, OperationStats> e : stats.entrySet()) {
+            Snapshot snapshot = e.getValue().snapshot(reset);
+            if (snapshot.count() > 0) {
+                snapshots.put(e.getKey(), snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    // one line per operation that was called, for logging
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<OperationType, Snapshot> e : snapshot().entrySet()) {
+            Snapshot s = e.getValue();
+            sb.append(String.format("%-16s count=%d errors=%d retries=%d rate=%.1f/s p50=%.2fms p90=%.2fms "
+                                            + "p99=%.2fms p999=%.2fms max=%.2fms network=%.0f%% in=%dB out=%dB%n",
+                                    e.getKey(), s.count(), s.errors(), s.retries(), s.callsPerSecond(),
+                                    s.p50Micros() / 1000.0, s.p90Micros() / 1000.0, s.p99Micros() / 1000.0,
+                                    s.p999Micros() / 1000.0, s.maxMicros() / 1000.0, s.networkShare() * 100,
+                                    s.responseBytes(), s.requestBytes()));
+        }
+        return sb.toString();
+    }
+
+    private static class OperationStats {
+        private final Histogram latency = new Histogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder networkNanos = new LongAdder();
+        private final LongAdder processingNanos = new LongAdder();
+        private final AtomicLong intervalStartNanos = new AtomicLong(System.nanoTime());
+
+        void record(long latencyNanos, boolean succeeded) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            if (!succeeded) {
+                errors.increment();
+            }
+        }
+
+        void record(CallResult result) {
+            record(result.totalNanos(), result.succeeded());
+            if (result.retries() > 0) {
+                retries.add(result.retries());
+            }
+            requestBytes.add(result.requestBytes());
+            responseBytes.add(result.responseBytes());
+            networkNanos.add(result.networkNanos());
+            processingNanos.add(result.processingNanos());
+        }
+
+        Snapshot snapshot(boolean reset) {
+            long now = System.nanoTime();
+            long start = reset ? intervalStartNanos.getAndSet(now) : intervalStartNanos.get();
+            long[] counts = latency.counts(reset);
+            return Snapshot.create(counts, reset ? errors.sumThenReset() : errors.sum(),
+                                   reset ? retries.sumThenReset() : retries.sum(),
+                                   reset ? requestBytes.sumThenReset() : requestBytes.sum(),
+                                   reset ? responseBytes.sumThenReset() : responseBytes.sum(),
+                                   reset ? networkNanos.sumThenReset() : networkNanos.sum(),
+                                   reset ? processingNanos.sumThenReset() : processingNanos.sum(),
+                                   now - start);
+        }
+    }
+
+    static class Histogram {
+        static final int SUB_BUCKET_BITS = 5;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // values up to 2^40 microseconds, anything larger lands in the last bucket
+        static final int MAX_MAGNITUDE = 40;
+        static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long value) {
+            counts.incrementAndGet(indexOf(value));
+        }
+
+        long[] counts(boolean reset) {
+            long[] copy = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            }
+            return copy;
+        }
+
+        static int indexOf(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) Math.max(0, value);
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int shift = magnitude - SUB_BUCKET_BITS;
+            int index = (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+            return Math.min(index, BUCKETS - 1);
+        }
+
+        // the largest value that falls into the bucket
+        static long highestValueOf(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long sub = index - shift * SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+    }
+
+    @AutoValue
+    public abstract static class Snapshot {
+        public abstract long count();
+
+        public abstract long errors();
+
+        public abstract long retries();
+
+        public abstract long requestBytes();
+
+        public abstract long responseBytes();
+
+        public abstract long p50Micros();
+
+        public abstract long p90Micros();
+
+        public abstract long p99Micros();
+
+        public abstract long p999Micros();
+
+        public abstract long maxMicros();
+
+        public abstract long meanMicros();
+
+        // share of the time spent in attempts that went to the network rather than to processing responses
+        public abstract double networkShare();
+
+        public abstract long intervalNanos();
+
+        public double callsPerSecond() {
+            return intervalNanos() == 0 ? 0 : count() * 1e9 / intervalNanos();
+        }
+
+        static Snapshot create(long[] counts, long errors, long retries, long requestBytes, long responseBytes,
+                long networkNanos, long processingNanos, long intervalNanos) {
+            long count = 0;
+            double sum = 0;
+            int maxIndex = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    count += counts[i];
+                    sum += (double) counts[i] * Histogram.highestValueOf(i);
+                    maxIndex = i;
+                }
+            }
+            long attemptNanos = networkNanos + processingNanos;
+            return new com.microsoft.azure.search.samples.client.AutoValue_LatencyRecorder_Snapshot(
+                    count, errors, retries, requestBytes, responseBytes, percentile(counts, count, 0.5),
+                    percentile(counts, count, 0.9), percentile(counts, count, 0.99), percentile(counts, count, 0.999),
+                    count == 0 ? 0 : Histogram.highestValueOf(maxIndex), count == 0 ? 0 : (long) (sum / count),
+                    attemptNanos == 0 ? 0 : (double) networkNanos / attemptNanos, intervalNanos);
+        }
+
+        private static long percentile(long[] counts, long count, double percentile) {
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Histogram.highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
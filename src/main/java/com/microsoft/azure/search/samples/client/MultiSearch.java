@@ -0,0 +1,115 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchRequest;
+import com.microsoft.azure.search.samples.results.MultiSearchResult;
+import com.microsoft.azure.search.samples.results.SearchResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * One multiSearch() call. "parallelism" lanes each send a query and send the next one when it completes, so no more
+ * than that many queries of the call are in flight, on top of the client's own maxInFlight bound. At the deadline
+ * no further queries are sent and those still running are cancelled: their futures are cancelled, which aborts the
+ * HTTP exchange through Cancellation and frees the worker and its maxInFlight slot.
+ */
+class MultiSearch {
+    private final SearchIndexClient client;
+    private final List<SearchRequest> requests;
+    private final AtomicReferenceArray<CompletableFuture<SearchResult>> futures;
+    private final AtomicLongArray sentNanos;
+    private final AtomicLongArray latencyNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final CountDownLatch completed;
+    private volatile boolean expired;
+
+    MultiSearch(SearchIndexClient client, List<SearchRequest> requests) {
+        this.client = client;
+        this.requests = requests;
+        this.futures = new AtomicReferenceArray<>(requests.size());
+        this.sentNanos = new AtomicLongArray(requests.size());
+        this.latencyNanos = new AtomicLongArray(requests.size());
+        this.completed = new CountDownLatch(requests.size());
+    }
+
+    MultiSearchResult run(int parallelism, long timeoutNanos) throws InterruptedIOException {
+        long start = System.nanoTime();
+        for (int lane = 0; lane < Math.max(1, parallelism); lane++) {
+            sendNext();
+        }
+        try {
+            completed.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            expire();
+            throw new InterruptedIOException("Interrupted while waiting for the searches to complete");
+        }
+        expire();
+        long now = System.nanoTime();
+
+        List<MultiSearchResult.Item> items = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            CompletableFuture<SearchResult> future = futures.get(i);
+            SearchRequest request = requests.get(i);
+            if (future == null) {
+                items.add(MultiSearchResult.Item.create(request, null, new InterruptedIOException(
+                        "The search was not sent before the deadline"), 0));
+            } else if (future.isCancelled() || !future.isDone()) {
+                items.add(MultiSearchResult.Item.create(request, null, new InterruptedIOException(
+                        "The search did not complete before the deadline"), now - sentNanos.get(i)));
+            } else {
+                try {
+                    items.add(MultiSearchResult.Item.create(request, future.join(), null, latencyNanos.get(i)));
+                } catch (CompletionException e) {
+                    items.add(MultiSearchResult.Item.create(request, null, asIOException(e.getCause()),
+                                                            latencyNanos.get(i)));
+                }
+            }
+        }
+        return MultiSearchResult.create(items, now - start);
+    }
+
+    private void sendNext() {
+        int i = next.getAndIncrement();
+        if (i >= requests.size() || expired) {
+            return;
+        }
+        SearchRequest request = requests.get(i);
+        long sent = System.nanoTime();
+        sentNanos.set(i, sent);
+        CompletableFuture<SearchResult> future = client.searchAsync(request.search(), request.options());
+        futures.set(i, future);
+        if (expired) {
+            // expire() may have swept the futures before this one was set
+            future.cancel(false);
+        }
+        future.whenComplete((result, error) -> {
+            latencyNanos.set(i, System.nanoTime() - sent);
+            completed.countDown();
+            sendNext();
+        });
+    }
+
+    private void expire() {
+        expired = true;
+        for (int i = 0; i < futures.length(); i++) {
+            CompletableFuture<SearchResult> future = futures.get(i);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static IOException asIOException(Throwable error) {
+        return error instanceof IOException ? (IOException) error : new IOException(error.getMessage(), error);
+    }
+}
@@ -0,0 +1,9 @@
+package com.microsoft.azure.search.samples.client;
+
+public enum OperationType {
+    SEARCH,
+    SUGGEST,
+    LOOKUP,
+    INDEX_BATCH,
+    INDEX_MANAGEMENT
+}
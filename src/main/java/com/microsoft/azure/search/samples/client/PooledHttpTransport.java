@@ -0,0 +1,258 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Transport that keeps a bounded pool of keep-alive connections per host, evicts connections that sat idle for too
+ * long and re-validates connections before reusing them after a period of inactivity.
+ *
+ * HTTP/2 is not offered: the classic HttpClient 4.x API only speaks HTTP/1.1, so throughput comes from persistent
+ * connections rather than multiplexing.
+ */
+public class PooledHttpTransport implements HttpTransport {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    private PooledHttpTransport(Builder builder) {
+        this.connectionManager = new PoolingHttpClientConnectionManager(builder.connectionTtlMillis,
+                                                                        TimeUnit.MILLISECONDS);
+        this.connectionManager.setMaxTotal(builder.maxConnectionsTotal);
+        this.connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerHost);
+        this.connectionManager.setValidateAfterInactivity(builder.validateAfterInactivityMillis);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(builder.connectTimeoutMillis)
+                .setSocketTimeout(builder.socketTimeoutMillis)
+                .setConnectionRequestTimeout(builder.connectionRequestTimeoutMillis)
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(builder.idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .disableContentCompression()
+                // retries are up to RetryPolicy, which knows about the retry budget and the deadline
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response execute(String method, String url, Map<String, String> headers, @Nullable RequestBody body)
+            throws IOException {
+        RequestBuilder request = RequestBuilder.create(method).setUri(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.addHeader(header.getKey(), header.getValue());
+        }
+        if (body != null) {
+            request.setEntity(new StreamingEntity(body));
+        }
+        HttpUriRequest httpRequest = request.build();
+        // aborting closes the connection, whether the request is waiting for it, being sent or being read
+        Cancellation.onAbort(httpRequest::abort);
+        return new PooledResponse(httpClient.execute(httpRequest));
+    }
+
+    // Opens up to "connections" connections to the host of the given url concurrently so that the first requests
+    // after startup don't pay for connect and TLS handshakes. The connections stay in the pool afterwards.
+    public void warmUp(String url, int connections) throws IOException {
+        List<Thread> threads = new ArrayList<>();
+        List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < connections; i++) {
+            Thread thread = new Thread(() -> {
+                try (Response response = execute("GET", url, Collections.emptyMap(), null)) {
+                    response.statusCode();
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }, "search-transport-warmup-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during connection warm-up", e);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+
+    public int leasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int availableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    public static class Builder {
+        private int maxConnectionsPerHost = 20;
+        private int maxConnectionsTotal = 100;
+        private long idleTimeoutMillis = 30_000;
+        private long connectionTtlMillis = -1;
+        private int validateAfterInactivityMillis = 2_000;
+        private int connectTimeoutMillis = 10_000;
+        private int socketTimeoutMillis = 60_000;
+        private int connectionRequestTimeoutMillis = 30_000;
+
+        private Builder() {
+        }
+
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public Builder maxConnectionsTotal(int maxConnectionsTotal) {
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+
+        public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+            this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+            return this;
+        }
+
+        public Builder connectionTimeToLive(long ttl, TimeUnit unit) {
+            this.connectionTtlMillis = unit.toMillis(ttl);
+            return this;
+        }
+
+        public Builder validateAfterInactivity(int inactivity, TimeUnit unit) {
+            this.validateAfterInactivityMillis = (int) unit.toMillis(inactivity);
+            return this;
+        }
+
+        public Builder connectTimeout(int timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = (int) unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder socketTimeout(int timeout, TimeUnit unit) {
+            this.socketTimeoutMillis = (int) unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder connectionRequestTimeout(int timeout, TimeUnit unit) {
+            this.connectionRequestTimeoutMillis = (int) unit.toMillis(timeout);
+            return this;
+        }
+
+        public PooledHttpTransport build() {
+            return new PooledHttpTransport(this);
+        }
+    }
+
+    private static class StreamingEntity extends AbstractHttpEntity {
+        private final RequestBody body;
+
+        StreamingEntity(RequestBody body) {
+            this.body = body;
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        // HttpClient itself only writes the body, a buffered copy is good enough for anything that reads it
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            body.writeTo(copy);
+            return new ByteArrayInputStream(copy.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            body.writeTo(out);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private static class PooledResponse implements Response {
+        private final CloseableHttpResponse response;
+
+        PooledResponse(CloseableHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int statusCode() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String reasonPhrase() {
+            return response.getStatusLine().getReasonPhrase();
+        }
+
+        @Override
+        public String header(String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            HttpEntity entity = response.getEntity();
+            return entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // consuming the entity releases the connection back to the pool instead of closing it
+            try {
+                EntityUtils.consume(response.getEntity());
+            } finally {
+                response.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.results.SearchResult;
+import com.microsoft.azure.search.samples.results.TypedSearchResult;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Search options turned into url fragments once, for pages that run the same query shape over and over with only
+ * the search text changing. Each call encodes the search text and, if the filter has {0}, {1}, ... placeholders,
+ * the filter arguments, which are written as OData literals:
+ *
+ *   PreparedSearch byCategory = client.prepareSearch(SearchOptions.builder().filter("Category eq {0}").build());
+ *   byCategory.search("pool", "Luxury");
+ *
+ * The url is the one SearchIndexClient.search() builds for the same options, so both share cache entries.
+ */
+public class PreparedSearch {
+    private final SearchIndexClient client;
+    private final String urlPrefix;
+    private final String urlOptions;
+    private final FilterTemplate filter;
+
+    PreparedSearch(SearchIndexClient client, String urlPrefix, String urlOptions, FilterTemplate filter) {
+        this.client = client;
+        this.urlPrefix = urlPrefix;
+        this.urlOptions = urlOptions;
+        this.filter = filter;
+    }
+
+    public SearchResult search(String search, Object... filterArguments) throws IOException {
+        String url = url(search, filterArguments);
+        return client.executeSearch(() -> url);
+    }
+
+    public <T> TypedSearchResult<T> search(String search, Class<T> documentType, Object... filterArguments)
+            throws IOException {
+        String url = url(search, filterArguments);
+        return client.executeSearch(() -> url, documentType);
+    }
+
+    public CompletableFuture<SearchResult> searchAsync(String search, Object... filterArguments) {
+        String url = url(search, filterArguments);
+        return client.executeSearchAsync(() -> url);
+    }
+
+    public int filterArity() {
+        return filter.arity();
+    }
+
+    String url(String search, Object[] filterArguments) {
+        StringBuilder url = new StringBuilder(urlPrefix.length() + urlOptions.length() + 2 * search.length() + 64);
+        try {
+            url.append(urlPrefix).append(URLEncoder.encode(search, "UTF-8")).append(urlOptions);
+            filter.appendTo(url, filterArguments);
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        return url.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.results.SuggestResult;
+import com.microsoft.azure.search.samples.results.TypedSuggestResult;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * The suggest counterpart of PreparedSearch: suggester and options are encoded once, each call only encodes the
+ * typed text and the filter arguments, if any.
+ */
+public class PreparedSuggest {
+    private final SearchIndexClient client;
+    private final String urlPrefix;
+    private final String urlOptions;
+    private final FilterTemplate filter;
+
+    PreparedSuggest(SearchIndexClient client, String urlPrefix, String urlOptions, FilterTemplate filter) {
+        this.client = client;
+        this.urlPrefix = urlPrefix;
+        this.urlOptions = urlOptions;
+        this.filter = filter;
+    }
+
+    public SuggestResult suggest(String search, Object... filterArguments) throws IOException {
+        String url = url(search, filterArguments);
+        return client.executeSuggest(() -> url);
+    }
+
+    public <T> TypedSuggestResult<T> suggest(String search, Class<T> documentType, Object... filterArguments)
+            throws IOException {
+        String url = url(search, filterArguments);
+        return client.executeSuggest(() -> url, documentType);
+    }
+
+    public CompletableFuture<SuggestResult> suggestAsync(String search, Object... filterArguments) {
+        String url = url(search, filterArguments);
+        return client.executeSuggestAsync(() -> url);
+    }
+
+    public int filterArity() {
+        return filter.arity();
+    }
+
+    String url(String search, Object[] filterArguments) {
+        StringBuilder url = new StringBuilder(urlPrefix.length() + urlOptions.length() + 2 * search.length() + 64);
+        try {
+            url.append(urlPrefix).append(URLEncoder.encode(search, "UTF-8")).append(urlOptions);
+            filter.appendTo(url, filterArguments);
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        return url.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.io.IOException;
+
+/*
+ * A request the client refused to send, because the concurrency limit was reached or the circuit breaker is open.
+ * It never reached the service and is not retried.
+ */
+public class RequestRejectedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+}
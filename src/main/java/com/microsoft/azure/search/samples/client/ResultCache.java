@@ -0,0 +1,194 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Size-bounded LRU cache of raw response bodies, keyed on the request url. Bodies are kept as bytes rather than
+ * parsed results: the size of an entry is exact, and every hit is parsed into fresh objects, so callers can't
+ * modify each other's results.
+ *
+ * Search and suggest entries only expire through their TTL. Lookup entries are also dropped for every key an
+ * index batch touches, or all of them if no key field is configured.
+ */
+public class ResultCache {
+    // rough per-entry overhead of the map node, the entry and the key string header
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final Map<OperationType, Long> ttlNanos;
+    private final String keyField;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private ResultCache(Builder builder) {
+        this.maxBytes = builder.maxBytes;
+        this.ttlNanos = new EnumMap<>(builder.ttlNanos);
+        this.keyField = builder.keyField;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Nullable
+    public String keyField() {
+        return keyField;
+    }
+
+    boolean caches(OperationType operation) {
+        return ttlNanos.containsKey(operation);
+    }
+
+    @Nullable
+    synchronized byte[] get(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null && entry.expiresAtNanos - System.nanoTime() > 0) {
+            hits++;
+            return entry.body;
+        }
+        if (entry != null) {
+            remove(url);
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(OperationType operation, String url, byte[] body) {
+        Long ttl = ttlNanos.get(operation);
+        long size = entrySize(url, body);
+        if (ttl == null || size > maxBytes) {
+            return;
+        }
+        remove(url);
+        entries.put(url, new Entry(operation, body, System.nanoTime() + ttl));
+        sizeBytes += size;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> e = eldest.next();
+            sizeBytes -= entrySize(e.getKey(), e.getValue().body);
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void invalidate(String url) {
+        remove(url);
+    }
+
+    synchronized void invalidateAll(OperationType operation) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getValue().operation == operation) {
+                sizeBytes -= entrySize(e.getKey(), e.getValue().body);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return Stats.create(hits, misses, evictions, entries.size(), sizeBytes);
+    }
+
+    private void remove(String url) {
+        Entry removed = entries.remove(url);
+        if (removed != null) {
+            sizeBytes -= entrySize(url, removed.body);
+        }
+    }
+
+    private static long entrySize(String url, byte[] body) {
+        return body.length + 2L * url.length() + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static class Entry {
+        final OperationType operation;
+        final byte[] body;
+        final long expiresAtNanos;
+
+        Entry(OperationType operation, byte[] body, long expiresAtNanos) {
+            this.operation = operation;
+            this.body = body;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+        public abstract long hits();
+
+        public abstract long misses();
+
+        public abstract long evictions();
+
+        public abstract int entries();
+
+        public abstract long sizeBytes();
+
+        public double hitRate() {
+            long requests = hits() + misses();
+            return requests == 0 ? 0 : (double) hits() / requests;
+        }
+
+        static Stats create(long hits, long misses, long evictions, int entries, long sizeBytes) {
+            return new com.microsoft.azure.search.samples.client.AutoValue_ResultCache_Stats(hits, misses, evictions,
+                                                                                             entries, sizeBytes);
+        }
+    }
+
+    public static class Builder {
+        private long maxBytes = 64L * 1024 * 1024;
+        private final Map<OperationType, Long> ttlNanos = new EnumMap<>(OperationType.class);
+        private String keyField;
+
+        private Builder() {
+            ttlNanos.put(OperationType.SEARCH, TimeUnit.SECONDS.toNanos(60));
+            ttlNanos.put(OperationType.SUGGEST, TimeUnit.SECONDS.toNanos(60));
+            ttlNanos.put(OperationType.LOOKUP, TimeUnit.SECONDS.toNanos(60));
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        // a ttl of zero turns caching off for that operation
+        public Builder ttl(OperationType operation, long ttl, TimeUnit unit) {
+            if (operation != OperationType.SEARCH && operation != OperationType.SUGGEST
+                    && operation != OperationType.LOOKUP) {
+                throw new IllegalArgumentException("Only search, suggest and lookup results can be cached");
+            }
+            if (ttl <= 0) {
+                ttlNanos.remove(operation);
+            } else {
+                ttlNanos.put(operation, unit.toNanos(ttl));
+            }
+            return this;
+        }
+
+        // name of the index key, used to drop only the lookups of documents written by indexBatch
+        public Builder keyField(String keyField) {
+            this.keyField = keyField;
+            return this;
+        }
+
+        public ResultCache build() {
+            return new ResultCache(this);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.apache.http.NoHttpResponseException;
+
+import java.io.IOException;
+import java.net.HttpRetryException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Decides whether and when a failed request is retried. Throttling (429, 503) and transient connection failures are
+ * retried with exponential backoff and full jitter, or after the delay the service asked for in Retry-After. Other
+ * HTTP errors and malformed responses are not retried.
+ *
+ * Every operation has a deadline measured from its first attempt, a retry that would end past it is not made.
+ * Retries also draw from a budget shared by all requests of the client: each request adds budgetRatio tokens and
+ * each retry takes one, so while the service is overloaded retries add at most that share of extra load.
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<OperationType, Long> maxElapsedMillis;
+    private final double budgetRatio;
+    private final double maxBudgetTokens;
+    private double budgetTokens;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.maxElapsedMillis = new EnumMap<>(builder.maxElapsedMillis);
+        this.budgetRatio = builder.budgetRatio;
+        this.maxBudgetTokens = builder.maxBudgetTokens;
+        this.budgetTokens = builder.maxBudgetTokens;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static RetryPolicy noRetries() {
+        return builder().maxAttempts(1).build();
+    }
+
+    // retries made so far
+    public long retries() {
+        return retries.get();
+    }
+
+    // retryable failures that went to the caller because of the deadline or the retry budget
+    public long retriesDenied() {
+        return retriesDenied.get();
+    }
+
+    <T> T execute(OperationType operation, SearchIndexClient.RetriableHttpOperation<T> r) throws IOException {
+        long startNanos = startOperation();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return r.run();
+            } catch (IOException e) {
+                long delay = retryDelayMillis(operation, e, attempt, startNanos);
+                if (delay < 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted during HTTP retry", ie);
+                }
+            }
+        }
+    }
+
+    // Called once per operation before its first attempt, returns the start time to pass to retryDelayMillis
+    long startOperation() {
+        synchronized (this) {
+            budgetTokens = Math.min(maxBudgetTokens, budgetTokens + budgetRatio);
+        }
+        return System.nanoTime();
+    }
+
+    // Delay before the attempt following the given failed one, or -1 if the failure should go to the caller
+    long retryDelayMillis(OperationType operation, IOException failure, int failedAttempt, long startNanos) {
+        if (!isRetryable(failure) || failedAttempt >= maxAttempts) {
+            return -1;
+        }
+        long delay = backoffMillis(failedAttempt);
+        if (failure instanceof ThrottledException && ((ThrottledException) failure).retryAfterMillis() >= 0) {
+            delay = ((ThrottledException) failure).retryAfterMillis();
+        }
+        Long maxElapsed = maxElapsedMillis.get(operation);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if ((maxElapsed != null && elapsed + delay > maxElapsed) || !tryTakeBudget()) {
+            retriesDenied.incrementAndGet();
+            return -1;
+        }
+        retries.incrementAndGet();
+        return delay;
+    }
+
+    // full jitter: uniformly random between zero and the exponential backoff for this attempt
+    private long backoffMillis(int failedAttempt) {
+        long ceiling = initialBackoffMillis << Math.min(failedAttempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private synchronized boolean tryTakeBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens--;
+        return true;
+    }
+
+    static boolean isRetryable(IOException failure) {
+        if (failure instanceof HttpErrorException) {
+            return false;
+        }
+        // a ConnectException that isn't an HTTP error is a failed connect, which is covered by SocketException
+        return failure instanceof HttpRetryException
+                || failure instanceof SocketTimeoutException
+                || failure instanceof SocketException
+                || failure instanceof NoHttpResponseException;
+    }
+
+    public static class Builder {
+        private int maxAttempts = 4;
+        private long initialBackoffMillis = 500;
+        private long maxBackoffMillis = 30_000;
+        private final Map<OperationType, Long> maxElapsedMillis = new EnumMap<>(OperationType.class);
+        private double budgetRatio = 0.1;
+        private double maxBudgetTokens = 10;
+
+        private Builder() {
+            for (OperationType operation : OperationType.values()) {
+                maxElapsedMillis.put(operation, 60_000L);
+            }
+        }
+
+        // including the first attempt
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder initialBackoff(long backoff, TimeUnit unit) {
+            this.initialBackoffMillis = unit.toMillis(backoff);
+            return this;
+        }
+
+        public Builder maxBackoff(long backoff, TimeUnit unit) {
+            this.maxBackoffMillis = unit.toMillis(backoff);
+            return this;
+        }
+
+        // no retry is made that would start later than this after the first attempt of the operation
+        public Builder maxElapsed(OperationType operation, long maxElapsed, TimeUnit unit) {
+            this.maxElapsedMillis.put(operation, unit.toMillis(maxElapsed));
+            return this;
+        }
+
+        // retries allowed per request once the initial burst of maxBudgetTokens retries is used up
+        public Builder budgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public Builder maxBudgetTokens(double maxBudgetTokens) {
+            this.maxBudgetTokens = maxBudgetTokens;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
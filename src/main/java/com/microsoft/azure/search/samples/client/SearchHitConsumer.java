@@ -0,0 +1,10 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.results.SearchResult;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface SearchHitConsumer {
+    void accept(SearchResult.SearchHit hit) throws IOException;
+}
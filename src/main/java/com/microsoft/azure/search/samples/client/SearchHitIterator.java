@@ -0,0 +1,136 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.results.SearchResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Lazily walks all hits of a query in $skip windows of one page each. While the caller consumes a page, up to
+ * "prefetchPages" following pages are already being fetched, which also caps how many pages are held in memory.
+ * If the service answers with a next link instead, the remaining pages are fetched by following the links, which
+ * is sequential by nature.
+ */
+public class SearchHitIterator implements Iterator<SearchResult.SearchHit>, Closeable {
+    // the service rejects larger $skip values and cuts pages bigger than this short
+    private static final int MAX_SKIP = 100000;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final SearchIndexClient client;
+    private final String search;
+    private final SearchOptions options;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final Deque<CompletableFuture<SearchResult>> window = new ArrayDeque<>();
+    private Iterator<SearchResult.SearchHit> current = Collections.emptyIterator();
+    private int nextSkip;
+    private boolean lastPageRequested;
+
+    SearchHitIterator(SearchIndexClient client, String search, SearchOptions options, int prefetchPages) {
+        this.client = client;
+        this.search = search;
+        this.options = options;
+        this.pageSize = Math.min(options.top().orElse(50), MAX_PAGE_SIZE);
+        this.prefetchPages = prefetchPages;
+        this.nextSkip = options.skip().orElse(0);
+        fillWindow();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (!advance()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SearchResult.SearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    public Stream<SearchResult.SearchHit> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    // cancels pages that were prefetched but not consumed
+    @Override
+    public void close() {
+        lastPageRequested = true;
+        cancelWindow();
+    }
+
+    private boolean advance() {
+        CompletableFuture<SearchResult> next = window.poll();
+        if (next == null) {
+            return false;
+        }
+        SearchResult page = await(next);
+        current = page.hits().iterator();
+        if (page.nextLink() != null) {
+            // the service decided on paging itself, the skip windows fetched so far would overlap
+            cancelWindow();
+            lastPageRequested = true;
+            window.add(client.searchNextPageAsync(page.nextLink()));
+        } else if (page.hits().size() < pageSize) {
+            close();
+        } else {
+            fillWindow();
+        }
+        return true;
+    }
+
+    private void fillWindow() {
+        while (!lastPageRequested && window.size() < Math.max(1, prefetchPages)) {
+            if (nextSkip > MAX_SKIP) {
+                lastPageRequested = true;
+                break;
+            }
+            SearchOptions page = options.toBuilder().top(pageSize).skip(nextSkip).build();
+            window.add(client.searchAsync(search, page));
+            nextSkip += pageSize;
+        }
+    }
+
+    private void cancelWindow() {
+        for (CompletableFuture<SearchResult> page : window) {
+            page.cancel(false);
+        }
+        window.clear();
+    }
+
+    private static SearchResult await(CompletableFuture<SearchResult> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while waiting for a result page", e));
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw new UncheckedIOException(new IOException("Fetching a result page failed", cause));
+        }
+    }
+}
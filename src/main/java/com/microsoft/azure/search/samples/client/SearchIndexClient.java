@@ -1,155 +1,778 @@
 package com.microsoft.azure.search.samples.client;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.microsoft.azure.search.samples.demo.IndexOperation;
 import com.microsoft.azure.search.samples.index.IndexDefinition;
 import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.options.SearchRequest;
 import com.microsoft.azure.search.samples.options.SuggestOptions;
 import com.microsoft.azure.search.samples.results.IndexBatchResult;
+import com.microsoft.azure.search.samples.results.LookupManyResult;
+import com.microsoft.azure.search.samples.results.MultiSearchResult;
 import com.microsoft.azure.search.samples.results.SearchResult;
 import com.microsoft.azure.search.samples.results.SuggestResult;
+import com.microsoft.azure.search.samples.results.TypedSearchResult;
+import com.microsoft.azure.search.samples.results.TypedSuggestResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.net.ConnectException;
-import java.net.HttpRetryException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class SearchIndexClient {
+public class SearchIndexClient implements Closeable {
     private static final String API_VERSION = "2017-11-11-Preview";
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final ObjectWriter INDEX_BATCH_WRITER = JsonCodecs.writerFor(IndexBatch.class);
+    private static final SearchResponseParser SEARCH_RESPONSE_PARSER = new SearchResponseParser();
+    private static final byte[] BATCH_PREFIX = "{\"value\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+    // lookupMany() keys per search request, and how long their url-encoded filter may get to keep urls well below
+    // the service's 8 KB limit
+    private static final int MAX_LOOKUP_KEYS_PER_REQUEST = 100;
+    private static final int MAX_LOOKUP_FILTER_CHARS = 3000;
+    private static final char[] KEY_DELIMITERS = { ',', '|', ';', '~', '^' };
 
-    private final String serviceName;
+    private final String endpoint;
     private final String indexName;
-    private final String apiKey;
+    private final Map<String, String> headers;
+    private final Map<String, String> gzipBodyHeaders;
+    private final HttpTransport transport;
+    private final int maxInFlight;
+    private final ExecutionMode executionMode;
+    private final ResultCache cache;
+    private final DocumentKeys documentKeys;
+    private final HedgingPolicy hedging;
+    private final RetryPolicy retryPolicy;
+    private final ConcurrencyLimiter readLimiter;
+    private final ConcurrencyLimiter indexLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final ClientMetrics metrics;
+    private final Compression compression;
+    private volatile String keyField;
+    private AsyncRequestExecutor asyncExecutor;
+    private ExecutorService hedgeExecutor;
 
     public SearchIndexClient(String serviceName, String indexName, String apiKey) {
-        this.serviceName = serviceName;
-        this.indexName = indexName;
-        this.apiKey = apiKey;
+        this(builder(serviceName, indexName, apiKey));
     }
 
-    public boolean doesIndexExist() throws IOException {
-        HttpURLConnection connection = httpRequest(buildIndexDefinitionUrl(), "GET");
-        int response = connection.getResponseCode();
-        if (response == HttpURLConnection.HTTP_NOT_FOUND) {
-            return false;
+    private SearchIndexClient(Builder builder) {
+        this.endpoint = builder.endpoint != null
+                ? builder.endpoint
+                : String.format("https://%s.search.windows.net", builder.serviceName);
+        this.indexName = builder.indexName;
+        this.transport = builder.transport != null ? builder.transport : new UrlConnectionTransport();
+        this.maxInFlight = builder.maxInFlight;
+        this.executionMode = builder.executionMode;
+        this.cache = builder.cache;
+        this.hedging = builder.hedging;
+        this.retryPolicy = builder.retryPolicy != null ? builder.retryPolicy : RetryPolicy.builder().build();
+        this.readLimiter = builder.readLimiter;
+        this.indexLimiter = builder.indexLimiter;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.metrics = builder.metrics;
+        this.compression = builder.compression;
+        this.keyField = builder.keyField != null ? builder.keyField : cache != null ? cache.keyField() : null;
+        this.documentKeys = cache != null && cache.keyField() != null
+                ? new DocumentKeys(cache.keyField())
+                : null;
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", "application/json");
+        headers.put("api-key", builder.apiKey);
+        if (compression != null && compression.acceptCompressedResponses()) {
+            headers.put("accept-encoding", "gzip, deflate");
         }
-        throwOnHttpError(connection);
-        return true;
+        this.headers = Collections.unmodifiableMap(headers);
+        Map<String, String> gzipBodyHeaders = new HashMap<>(headers);
+        gzipBodyHeaders.put("content-encoding", "gzip");
+        this.gzipBodyHeaders = Collections.unmodifiableMap(gzipBodyHeaders);
+    }
+
+    public static Builder builder(String serviceName, String indexName, String apiKey) {
+        return new Builder(serviceName, indexName, apiKey);
+    }
+
+    public boolean doesIndexExist() throws IOException {
+        return measured(OperationType.INDEX_MANAGEMENT, () -> {
+            try (HttpTransport.Response response = httpRequest(buildIndexDefinitionUrl(), "GET")) {
+                if (response.statusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return false;
+                }
+                throwOnHttpError(response);
+                return true;
+            }
+        });
     }
 
     public void createIndex(IndexDefinition indexDefinition) throws IOException {
-        HttpURLConnection connection = httpRequest(buildIndexListUrl(), "POST");
-        connection.setDoOutput(true);
-        OBJECT_MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY).writeValue(
-                connection.getOutputStream(), indexDefinition);
-        throwOnHttpError(connection);
+        measured(OperationType.INDEX_MANAGEMENT, () -> {
+            try (HttpTransport.Response response = httpRequest(buildIndexListUrl(), "POST", out ->
+                    JsonCodecs.INDEX_DEFINITION.writeValue(nonClosing(out), indexDefinition))) {
+                throwOnHttpError(response);
+                return null;
+            }
+        });
     }
 
     public void deleteIndexIfExists() throws IOException {
         if (doesIndexExist()) {
-            HttpURLConnection connection = httpRequest(buildIndexDefinitionUrl(), "DELETE");
-            throwOnHttpError(connection);
+            measured(OperationType.INDEX_MANAGEMENT, () -> {
+                try (HttpTransport.Response response = httpRequest(buildIndexDefinitionUrl(), "DELETE")) {
+                    throwOnHttpError(response);
+                    return null;
+                }
+            });
         }
     }
 
     public IndexBatchResult indexBatch(final List<IndexOperation> operations) throws IOException {
-        return withHttpRetry(() -> {
-            HttpURLConnection connection = httpRequest(buildIndexingUrl(), "POST");
-            connection.setDoOutput(true);
-            OBJECT_MAPPER.writeValue(connection.getOutputStream(), new IndexBatch(operations));
-            throwOnHttpError(connection);
-            return OBJECT_MAPPER.readValue(connection.getInputStream(), IndexBatchResult.class);
-        });
+        return withRetry(OperationType.INDEX_BATCH, indexBatchOperation(operations));
+    }
+
+    public CompletableFuture<IndexBatchResult> indexBatchAsync(final List<IndexOperation> operations) {
+        return submitAsync(OperationType.INDEX_BATCH, indexBatchOperation(operations));
+    }
+
+    // Sends documents that were already serialized to JSON, used by BulkIndexer which needs the encoded size of
+    // every document up front anyway
+    IndexBatchResult indexSerializedBatch(final List<byte[]> documents, final List<String> keys) throws IOException {
+        try {
+            return withRetry(OperationType.INDEX_BATCH, () -> {
+                try (HttpTransport.Response response = httpRequest(buildIndexingUrl(), "POST", out -> {
+                    out.write(BATCH_PREFIX);
+                    for (int i = 0; i < documents.size(); i++) {
+                        if (i > 0) {
+                            out.write(',');
+                        }
+                        out.write(documents.get(i));
+                    }
+                    out.write(BATCH_SUFFIX);
+                })) {
+                    throwOnHttpError(response);
+                    return JsonCodecs.INDEX_BATCH_RESULT.readValue(response.body());
+                }
+            });
+        } finally {
+            if (cache != null) {
+                for (String key : keys) {
+                    cache.invalidate(buildIndexLookupUrl(key));
+                }
+            }
+        }
     }
 
     public SearchResult search(final String search, final SearchOptions options) throws IOException {
-        return withHttpRetry(() -> {
-            HttpURLConnection connection = httpRequest(buildSearchUrl(search, options), "GET");
-            throwOnHttpError(connection);
-            return OBJECT_MAPPER.readValue(connection.getInputStream(), SearchResult.class);
+        return withRetry(OperationType.SEARCH, searchOperation(search, options));
+    }
+
+    // Streams the hits of the response to the consumer as they are parsed instead of collecting them. The returned
+    // result carries count, facets, coverage and next link, its hit list is always empty. A request that fails
+    // after the consumer has seen hits is not retried, that would hand it the same hits again.
+    public SearchResult search(final String search, final SearchOptions options,
+            final SearchHitConsumer consumer)
+            throws IOException {
+        return withRetry(OperationType.SEARCH, () -> {
+            boolean[] delivered = new boolean[1];
+            try (HttpTransport.Response response = httpRequest(buildSearchUrl(search, options), "GET")) {
+                throwOnHttpError(response);
+                return SEARCH_RESPONSE_PARSER.parse(response.body(), hit -> {
+                    delivered[0] = true;
+                    consumer.accept(hit);
+                });
+            } catch (IOException e) {
+                if (delivered[0]) {
+                    throw new IOException("Search response failed after hits were delivered", e);
+                }
+                throw e;
+            }
         });
     }
 
+    // Binds every hit straight to the given document type, e.g. Hotel.class, without an intermediate map
+    public <T> TypedSearchResult<T> search(final String search, final SearchOptions options,
+            final Class<T> documentType) throws IOException {
+        return withRetry(OperationType.SEARCH,
+                         readOperation(OperationType.SEARCH, () -> buildSearchUrl(search, options),
+                                       body -> SEARCH_RESPONSE_PARSER.parseTyped(body, documentType)));
+    }
+
+    public CompletableFuture<SearchResult> searchAsync(final String search, final SearchOptions options) {
+        return submitAsync(OperationType.SEARCH, searchOperation(search, options));
+    }
+
+    // Runs the searches concurrently and waits for all of them, but no longer than the timeout. At most
+    // "parallelism" of them are in flight at a time. Searches still running at the deadline are cancelled and
+    // reported as failed, as is any search that failed on its own; the others are unaffected.
+    public MultiSearchResult multiSearch(final List<SearchRequest> requests, final int parallelism,
+            final long timeout, final TimeUnit unit) throws IOException {
+        return new MultiSearch(this, requests).run(parallelism, unit.toNanos(timeout));
+    }
+
+    public MultiSearchResult multiSearch(final List<SearchRequest> requests, final long timeout, final TimeUnit unit)
+            throws IOException {
+        return multiSearch(requests, maxInFlight, timeout, unit);
+    }
+
+    // Iterates over every hit of the query, a page of options.top() hits (50 if not set) at a time, starting at
+    // options.skip(). Pages are fetched ahead through the async API.
+    public SearchHitIterator searchAll(final String search, final SearchOptions options) {
+        return searchAll(search, options, 2);
+    }
+
+    public SearchHitIterator searchAll(final String search, final SearchOptions options, final int prefetchPages) {
+        return new SearchHitIterator(this, search, options, prefetchPages);
+    }
+
+    CompletableFuture<SearchResult> searchNextPageAsync(final String nextLink) {
+        return submitAsync(OperationType.SEARCH, readOperation(OperationType.SEARCH, () -> nextLink,
+                                            body -> JsonCodecs.SEARCH_RESULT.readValue(body)));
+    }
+
     public SuggestResult suggest(final String search, final String suggesterName, final SuggestOptions options)
             throws IOException {
-        return withHttpRetry(() -> {
-            HttpURLConnection connection = httpRequest(buildIndexSuggestUrl(search, suggesterName, options), "GET");
-            throwOnHttpError(connection);
-            return OBJECT_MAPPER.readValue(connection.getInputStream(), SuggestResult.class);
-        });
+        return withRetry(OperationType.SUGGEST, suggestOperation(search, suggesterName, options));
+    }
+
+    public <T> TypedSuggestResult<T> suggest(final String search, final String suggesterName,
+            final SuggestOptions options, final Class<T> documentType) throws IOException {
+        return withRetry(OperationType.SUGGEST,
+                         readOperation(OperationType.SUGGEST,
+                                       () -> buildIndexSuggestUrl(search, suggesterName, options),
+                                       body -> SEARCH_RESPONSE_PARSER.parseTypedSuggest(body, documentType)));
+    }
+
+    public CompletableFuture<SuggestResult> suggestAsync(final String search, final String suggesterName,
+            final SuggestOptions options) {
+        return submitAsync(OperationType.SUGGEST, suggestOperation(search, suggesterName, options));
+    }
+
+    // Encodes the options once for queries that are run many times, see PreparedSearch
+    public PreparedSearch prepareSearch(final SearchOptions options) throws IOException {
+        return new PreparedSearch(this, searchUrlPrefix(), searchUrlOptions(options),
+                                  FilterTemplate.parse(options.filter().orElse(null)));
+    }
+
+    public PreparedSuggest prepareSuggest(final String suggesterName, final SuggestOptions options)
+            throws IOException {
+        return new PreparedSuggest(this, suggestUrlPrefix(), suggestUrlOptions(suggesterName, options),
+                                   FilterTemplate.parse(options.filter().orElse(null)));
+    }
+
+    SearchResult executeSearch(final UrlBuilder url) throws IOException {
+        return withRetry(OperationType.SEARCH, searchOperation(url));
+    }
+
+    <T> TypedSearchResult<T> executeSearch(final UrlBuilder url, final Class<T> documentType) throws IOException {
+        return withRetry(OperationType.SEARCH, readOperation(OperationType.SEARCH, url,
+                body -> SEARCH_RESPONSE_PARSER.parseTyped(body, documentType)));
+    }
+
+    CompletableFuture<SearchResult> executeSearchAsync(final UrlBuilder url) {
+        return submitAsync(OperationType.SEARCH, searchOperation(url));
+    }
+
+    SuggestResult executeSuggest(final UrlBuilder url) throws IOException {
+        return withRetry(OperationType.SUGGEST, suggestOperation(url));
+    }
+
+    <T> TypedSuggestResult<T> executeSuggest(final UrlBuilder url, final Class<T> documentType) throws IOException {
+        return withRetry(OperationType.SUGGEST, readOperation(OperationType.SUGGEST, url,
+                body -> SEARCH_RESPONSE_PARSER.parseTypedSuggest(body, documentType)));
+    }
+
+    CompletableFuture<SuggestResult> executeSuggestAsync(final UrlBuilder url) {
+        return submitAsync(OperationType.SUGGEST, suggestOperation(url));
     }
 
     public Map<String, Object> lookup(final String key) throws IOException {
-        return withHttpRetry(() -> {
-            HttpURLConnection connection = httpRequest(buildIndexLookupUrl(key), "GET");
-            throwOnHttpError(connection);
-            Map<String, Object> document = OBJECT_MAPPER.readValue(connection.getInputStream(),
-                                                                   new TypeReference<Map<String, Object>>() {});
+        return withRetry(OperationType.LOOKUP, lookupOperation(key));
+    }
+
+    public <T> T lookup(final String key, final Class<T> documentType) throws IOException {
+        return withRetry(OperationType.LOOKUP,
+                         readOperation(OperationType.LOOKUP, () -> buildIndexLookupUrl(key),
+                                       body -> SEARCH_RESPONSE_PARSER.parseDocument(body, documentType)));
+    }
+
+    public CompletableFuture<Map<String, Object>> lookupAsync(final String key) {
+        return submitAsync(OperationType.LOOKUP, lookupOperation(key));
+    }
+
+    // Fetches many documents by key with one search.in filter query per chunk of keys instead of a request per
+    // key. The chunks run concurrently; if any of them fails the whole call fails.
+    public LookupManyResult lookupMany(final Collection<String> keys) throws IOException {
+        String field = keyField();
+        Set<String> uniqueKeys = new LinkedHashSet<>(keys);
+        List<CompletableFuture<SearchResult>> chunks = new ArrayList<>();
+        for (List<String> chunk : lookupChunks(field, uniqueKeys)) {
+            chunks.add(lookupChunk(field, chunk));
+        }
+
+        Map<String, Map<String, Object>> found = new HashMap<>();
+        try {
+            for (CompletableFuture<SearchResult> future : chunks) {
+                for (SearchResult.SearchHit hit : future.get().hits()) {
+                    found.put(String.valueOf(hit.document().get(field)), hit.document());
+                }
+            }
+        } catch (InterruptedException e) {
+            chunks.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while looking up documents");
+        } catch (ExecutionException e) {
+            chunks.forEach(future -> future.cancel(false));
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause().getMessage(), e.getCause());
+        }
+        Map<String, Map<String, Object>> documents = new LinkedHashMap<>();
+        Set<String> missingKeys = new LinkedHashSet<>();
+        for (String key : uniqueKeys) {
+            Map<String, Object> document = found.get(key);
+            if (document != null) {
+                documents.put(key, document);
+            } else {
+                missingKeys.add(key);
+            }
+        }
+        return LookupManyResult.create(documents, missingKeys, chunks.size());
+    }
+
+    // Splits the keys so that each chunk's filter stays within MAX_LOOKUP_FILTER_CHARS once it is url-encoded, which
+    // is what counts against the url limit: a key of non-ASCII characters takes up to nine times its length
+    static List<List<String>> lookupChunks(String field, Collection<String> keys) throws IOException {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int filterChars = encodedLength(keyFilter(field, Collections.singletonList("")));
+        int emptyFilterChars = filterChars;
+        for (String key : keys) {
+            // the key with its quotes doubled, followed by an encoded delimiter
+            int keyChars = encodedLength(key.replace("'", "''")) + 3;
+            if (chunk.size() == MAX_LOOKUP_KEYS_PER_REQUEST
+                    || (!chunk.isEmpty() && filterChars + keyChars > MAX_LOOKUP_FILTER_CHARS)) {
+                addLookupChunk(field, chunk, chunks);
+                chunk = new ArrayList<>();
+                filterChars = emptyFilterChars;
+            }
+            chunk.add(key);
+            filterChars += keyChars;
+        }
+        if (!chunk.isEmpty()) {
+            addLookupChunk(field, chunk, chunks);
+        }
+        return chunks;
+    }
+
+    // the estimate doesn't hold when the keys contain every delimiter and the filter falls back to "or", so the
+    // actual filter is measured and halved until it fits
+    private static void addLookupChunk(String field, List<String> chunk, List<List<String>> chunks)
+            throws IOException {
+        if (chunk.size() > 1 && encodedLength(keyFilter(field, chunk)) > MAX_LOOKUP_FILTER_CHARS) {
+            int half = chunk.size() / 2;
+            addLookupChunk(field, chunk.subList(0, half), chunks);
+            addLookupChunk(field, chunk.subList(half, chunk.size()), chunks);
+        } else {
+            chunks.add(chunk);
+        }
+    }
+
+    private static int encodedLength(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8").length();
+    }
+
+    private CompletableFuture<SearchResult> lookupChunk(String field, List<String> keys) {
+        SearchOptions options = SearchOptions.builder().filter(keyFilter(field, keys)).top(keys.size()).build();
+        return searchAsync("*", options);
+    }
+
+    // search.in() splits its list on a delimiter, which must not occur in any of the keys; an "or" of equality
+    // comparisons is the fallback
+    static String keyFilter(String field, List<String> keys) {
+        for (char delimiter : KEY_DELIMITERS) {
+            boolean usable = true;
+            for (String key : keys) {
+                usable &= key.indexOf(delimiter) < 0;
+            }
+            if (usable) {
+                String list = String.join(String.valueOf(delimiter), keys);
+                return String.format("search.in(%s, %s, '%c')", field, FilterTemplate.literal(list), delimiter);
+            }
+        }
+        StringBuilder filter = new StringBuilder();
+        for (String key : keys) {
+            if (filter.length() > 0) {
+                filter.append(" or ");
+            }
+            filter.append(field).append(" eq ").append(FilterTemplate.literal(key));
+        }
+        return filter.toString();
+    }
+
+    // the configured key field, or the one of the index definition
+    private String keyField() throws IOException {
+        String field = keyField;
+        if (field != null) {
+            return field;
+        }
+        field = measured(OperationType.INDEX_MANAGEMENT, () -> {
+            try (HttpTransport.Response response = httpRequest(buildIndexDefinitionUrl(), "GET")) {
+                throwOnHttpError(response);
+                for (JsonNode definition : JsonCodecs.TREE.readTree(response.body()).path("fields")) {
+                    if (definition.path("key").asBoolean()) {
+                        return definition.path("name").asText();
+                    }
+                }
+                throw new IOException("Index " + indexName + " has no key field");
+            }
+        });
+        keyField = field;
+        return field;
+    }
+
+    private RetriableHttpOperation<IndexBatchResult> indexBatchOperation(final List<IndexOperation> operations) {
+        return () -> {
+            try (HttpTransport.Response response = httpRequest(buildIndexingUrl(), "POST", out ->
+                    writeIndexBatch(operations, out))) {
+                throwOnHttpError(response);
+                return JsonCodecs.INDEX_BATCH_RESULT.readValue(response.body());
+            } finally {
+                invalidateLookups(operations);
+            }
+        };
+    }
+
+    private GuardedOperation<SearchResult> searchOperation(final String search, final SearchOptions options) {
+        return searchOperation(() -> buildSearchUrl(search, options));
+    }
+
+    private GuardedOperation<SearchResult> searchOperation(final UrlBuilder url) {
+        return readOperation(OperationType.SEARCH, url, body -> JsonCodecs.SEARCH_RESULT.readValue(body));
+    }
+
+    private GuardedOperation<SuggestResult> suggestOperation(final String search, final String suggesterName,
+            final SuggestOptions options) {
+        return suggestOperation(() -> buildIndexSuggestUrl(search, suggesterName, options));
+    }
+
+    private GuardedOperation<SuggestResult> suggestOperation(final UrlBuilder url) {
+        return readOperation(OperationType.SUGGEST, url, body -> JsonCodecs.SUGGEST_RESULT.readValue(body));
+    }
+
+    private GuardedOperation<Map<String, Object>> lookupOperation(final String key) {
+        return readOperation(OperationType.LOOKUP, () -> buildIndexLookupUrl(key), body -> {
+            Map<String, Object> document = JsonCodecs.DOCUMENT.readValue(body);
             document.remove("@odata.context");
             return document;
         });
     }
 
-    private HttpURLConnection httpRequest(String url, String method) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("content-type", "application/json");
-        connection.setRequestProperty("api-key", this.apiKey);
-        return connection;
+    // An idempotent GET request. Its response body is cached when a cache is configured for the operation, and
+    // slow requests are hedged when a hedging policy is set. Only requests that go to the network pass the
+    // concurrency limit and the circuit breaker, cache hits don't, and a hedge needs a permit of its own.
+    private <T> GuardedOperation<T> readOperation(final OperationType operation, final UrlBuilder url,
+            final ResponseReader<T> reader) {
+        return () -> {
+            String requestUrl = url.build();
+            boolean cacheable = cache != null && cache.caches(operation);
+            if (cacheable) {
+                byte[] cached = cache.get(requestUrl);
+                if (cached != null) {
+                    return reader.read(new ByteArrayInputStream(cached));
+                }
+            }
+            RetriableHttpOperation<T> fetch = guarded(operation, () -> {
+                try (HttpTransport.Response response = httpRequest(requestUrl, "GET")) {
+                    throwOnHttpError(response);
+                    if (!cacheable) {
+                        return reader.read(response.body());
+                    }
+                    byte[] body = readFully(response.body());
+                    cache.put(operation, requestUrl, body);
+                    return reader.read(new ByteArrayInputStream(body));
+                }
+            });
+            return hedging != null ? hedging.execute(operation, fetch, hedgeExecutor()) : fetch.run();
+        };
+    }
+
+    // Every attempt of an operation passes the concurrency limit of its pool and the circuit breaker, and reports
+    // back whether the service handled it, was overloaded or failed
+    private <T> RetriableHttpOperation<T> guarded(final OperationType operation, final RetriableHttpOperation<T> r) {
+        final ConcurrencyLimiter limiter = operation == OperationType.INDEX_BATCH ? indexLimiter : readLimiter;
+        if (limiter == null && circuitBreaker == null) {
+            return r;
+        }
+        return () -> {
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            long start = System.nanoTime();
+            boolean trial = false;
+            if (circuitBreaker != null) {
+                try {
+                    trial = circuitBreaker.acquire();
+                } catch (IOException e) {
+                    if (limiter != null) {
+                        limiter.onIgnored();
+                    }
+                    throw e;
+                }
+            }
+            try {
+                T result = r.run();
+                if (limiter != null) {
+                    limiter.onSuccess(System.nanoTime() - start);
+                }
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess();
+                }
+                return result;
+            } catch (IOException | RuntimeException e) {
+                if (Cancellation.isCurrentCancelled()) {
+                    // a hedged attempt that lost, it says nothing about the service
+                    onGuardedIgnored(limiter, trial);
+                } else {
+                    onGuardedFailure(limiter, e, trial);
+                }
+                throw e;
+            }
+        };
+    }
+
+    private void onGuardedIgnored(ConcurrencyLimiter limiter, boolean trial) {
+        if (limiter != null) {
+            limiter.onIgnored();
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.onIgnored(trial);
+        }
     }
 
-    private void throwOnHttpError(HttpURLConnection connection) throws IOException {
-        int code = connection.getResponseCode();
+    private void onGuardedFailure(ConcurrencyLimiter limiter, Exception failure, boolean trial) {
+        // 429 and 503 both mean the service is up but busy: the limiter backs off, the breaker stays closed
+        boolean throttled = failure instanceof ThrottledException;
+        boolean serverFailure = failure instanceof HttpErrorException
+                ? ((HttpErrorException) failure).statusCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                : !throttled && failure instanceof IOException && RetryPolicy.isRetryable((IOException) failure);
+        boolean clientError = failure instanceof HttpErrorException && !serverFailure;
+        if (limiter != null) {
+            if (serverFailure || throttled) {
+                limiter.onDropped();
+            } else {
+                limiter.onIgnored();
+            }
+        }
+        if (circuitBreaker != null) {
+            if (serverFailure) {
+                circuitBreaker.onFailure();
+            } else if (clientError) {
+                // the service is up, it just didn't like the request
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onIgnored(trial);
+            }
+        }
+    }
+
+    private void invalidateLookups(List<IndexOperation> operations) throws IOException {
+        if (cache == null) {
+            return;
+        }
+        for (IndexOperation operation : operations) {
+            String key = documentKeys == null ? null : documentKeys.keyOf(operation.document());
+            if (key == null) {
+                cache.invalidateAll(OperationType.LOOKUP);
+                return;
+            }
+            cache.invalidate(buildIndexLookupUrl(key));
+        }
+    }
+
+    ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    // the worker pool is only started once the async API is used
+    private synchronized AsyncRequestExecutor async() {
+        if (asyncExecutor == null) {
+            asyncExecutor = new AsyncRequestExecutor(maxInFlight, retryPolicy, executionMode);
+        }
+        return asyncExecutor;
+    }
+
+    private synchronized ExecutorService hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = ClientExecutors.newRequestPool("search-client-hedge", maxInFlight, executionMode);
+        }
+        return hedgeExecutor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+            }
+            if (hedgeExecutor != null) {
+                hedgeExecutor.shutdownNow();
+            }
+        }
+        transport.close();
+    }
+
+    private HttpTransport.Response httpRequest(String url, String method) throws IOException {
+        return httpRequest(url, method, null);
+    }
+
+    private HttpTransport.Response httpRequest(String url, String method, HttpTransport.RequestBody body)
+            throws IOException {
+        Map<String, String> requestHeaders = headers;
+        if (body != null && compression != null) {
+            Compression.EncodedBody encoded = compression.encode(body);
+            body = encoded.body;
+            requestHeaders = encoded.compressed ? gzipBodyHeaders : headers;
+        }
+        HttpTransport.Response response;
+        CallMetrics call = metrics == null ? null : CallMetrics.current();
+        if (call == null) {
+            response = transport.execute(method, url, requestHeaders, body);
+        } else {
+            long start = System.nanoTime();
+            try {
+                response = call.meter(transport.execute(method, url, requestHeaders,
+                                                        body == null ? null : call.meter(body)));
+            } finally {
+                call.addNetworkNanos(System.nanoTime() - start);
+            }
+        }
+        // decompressing above the metering keeps CallResult sizes at what went over the wire
+        return compression == null ? response : compression.decode(response);
+    }
+
+    private void throwOnHttpError(HttpTransport.Response response) throws IOException {
+        int code = response.statusCode();
         if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
-            String message = String.format("HTTP error. Code: %s. Message: %s", code, connection.getResponseMessage());
-            if (code == HttpURLConnection.HTTP_UNAVAILABLE) {
+            String message = String.format("HTTP error. Code: %s. Message: %s", code, response.reasonPhrase());
+            if (code == HttpURLConnection.HTTP_UNAVAILABLE || code == HTTP_TOO_MANY_REQUESTS) {
                 // this typically means the server is asking for back off + retry
-                throw new HttpRetryException(message, code);
+                throw new ThrottledException(message, code, retryAfterMillis(response));
             } else {
-                throw new ConnectException(message);
+                throw new HttpErrorException(message, code);
+            }
+        }
+    }
+
+    // Retry-After in seconds or as an HTTP date, or the millisecond variants some services send. -1 if absent.
+    private static long retryAfterMillis(HttpTransport.Response response) {
+        for (String header : new String[] { "retry-after-ms", "x-ms-retry-after-ms" }) {
+            String value = response.header(header);
+            if (value != null) {
+                try {
+                    return Math.max(0, Long.parseLong(value.trim()));
+                } catch (NumberFormatException e) {
+                    // fall through to Retry-After
+                }
+            }
+        }
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ex) {
+                return -1;
             }
         }
     }
 
+    static void writeIndexBatch(List<IndexOperation> operations, OutputStream out) throws IOException {
+        INDEX_BATCH_WRITER.writeValue(nonClosing(out), new IndexBatch(operations));
+    }
+
+    // Jackson closes the target stream once it's done writing, leave that to the transport
+    private static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
     private String buildIndexListUrl() {
-        return String.format("https://%s.search.windows.net/indexes?api-version=%s", this.serviceName, API_VERSION);
+        return String.format("%s/indexes?api-version=%s", this.endpoint, API_VERSION);
     }
 
     private String buildIndexDefinitionUrl() {
-        return String.format("https://%s.search.windows.net/indexes/%s?api-version=%s", this.serviceName,
-                             this.indexName, API_VERSION);
+        return String.format("%s/indexes/%s?api-version=%s", this.endpoint, this.indexName, API_VERSION);
     }
 
     private String buildIndexingUrl() {
-        return String.format("https://%s.search.windows.net/indexes/%s/docs/index?api-version=%s", this.serviceName,
-                             this.indexName, API_VERSION);
+        return String.format("%s/indexes/%s/docs/index?api-version=%s", this.endpoint, this.indexName,
+                             API_VERSION);
     }
 
     private String buildIndexLookupUrl(String key) throws IOException {
-        return String.format("https://%s.search.windows.net/indexes/%s/docs('%s')?api-version=%s", this.serviceName,
-                             this.indexName, escapePathSegment(key), API_VERSION);
+        return String.format("%s/indexes/%s/docs('%s')?api-version=%s", this.endpoint, this.indexName,
+                             escapePathSegment(key), API_VERSION);
     }
 
-    private String buildSearchUrl(String search, SearchOptions options) throws IOException {
-        StringBuilder url = new StringBuilder(
-                String.format("https://%s.search.windows.net/indexes/%s/docs?api-version=%s&search=%s&$count=%s",
-                              this.serviceName, this.indexName, API_VERSION, URLEncoder.encode(search, "UTF-8"),
-                              options.includeCount().orElse(false)));
+    String buildSearchUrl(String search, SearchOptions options) throws IOException {
+        StringBuilder url = new StringBuilder(searchUrlPrefix())
+                .append(URLEncoder.encode(search, "UTF-8"))
+                .append(searchUrlOptions(options));
         if (options.filter().isPresent()) {
             url.append("&$filter=").append(URLEncoder.encode(options.filter().get(), "UTF-8"));
         }
+        return url.toString();
+    }
+
+    // everything up to the search text, which is followed by searchUrlOptions() and the filter
+    String searchUrlPrefix() {
+        return String.format("%s/indexes/%s/docs?api-version=%s&search=", this.endpoint, this.indexName,
+                             API_VERSION);
+    }
+
+    // every option but the filter, which is left to the end of the url so that it can be filled in last
+    static String searchUrlOptions(SearchOptions options) throws IOException {
+        StringBuilder url = new StringBuilder("&$count=").append(options.includeCount().orElse(false));
         if (options.orderBy().isPresent()) {
             url.append("&$orderby=").append(URLEncoder.encode(options.orderBy().get(), "UTF-8"));
         }
@@ -196,14 +819,24 @@ public class SearchIndexClient {
         return url.toString();
     }
 
-    private String buildIndexSuggestUrl(String search, String suggesterName, SuggestOptions options)
+    String buildIndexSuggestUrl(String search, String suggesterName, SuggestOptions options)
             throws IOException {
-        StringBuilder url = new StringBuilder(String.format(
-                "https://%s.search.windows.net/indexes/%s/docs/suggest?api-version=%s&search=%s&suggesterName=%s",
-                this.serviceName, this.indexName, API_VERSION, URLEncoder.encode(search, "UTF-8"), suggesterName));
+        StringBuilder url = new StringBuilder(suggestUrlPrefix())
+                .append(URLEncoder.encode(search, "UTF-8"))
+                .append(suggestUrlOptions(suggesterName, options));
         if (options.filter().isPresent()) {
             url.append("&$filter=").append(URLEncoder.encode(options.filter().get(), "UTF-8"));
         }
+        return url.toString();
+    }
+
+    String suggestUrlPrefix() {
+        return String.format("%s/indexes/%s/docs/suggest?api-version=%s&search=", this.endpoint, this.indexName,
+                             API_VERSION);
+    }
+
+    static String suggestUrlOptions(String suggesterName, SuggestOptions options) throws IOException {
+        StringBuilder url = new StringBuilder("&suggesterName=").append(suggesterName);
         if (options.orderby().isPresent()) {
             url.append("&$orderby=").append(URLEncoder.encode(options.orderby().get(), "UTF-8"));
         }
@@ -231,6 +864,16 @@ public class SearchIndexClient {
         return url.toString();
     }
 
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     private static String escapePathSegment(String segment) throws IOException {
         // URLEncoder.encode() is the wrong thing to use in this case, work-around with URI below
         try {
@@ -241,39 +884,185 @@ public class SearchIndexClient {
         }
     }
 
-    private static <T> T withHttpRetry(RetriableHttpOperation<T> r) throws IOException {
-        final int maxRetries = 3;
-        final int delayInMilliSec = 30000;
-        int count = 0;
-        T result;
-        while (true) {
-            try {
-                result = r.run();
-                break;
-            } catch (HttpRetryException e) {
-                if (++count == maxRetries) {
-                    throw e;
-                }
-            }
-            try {
-                Thread.sleep(delayInMilliSec * count);
-            } catch (InterruptedException e) {
-                throw new IOException("Interrupted during HTTP retry", e);
-            }
+    private <T> T withRetry(OperationType operation, RetriableHttpOperation<T> r) throws IOException {
+        if (metrics == null) {
+            return retryPolicy.execute(operation, attempt(operation, r, null));
+        }
+        CallMetrics call = new CallMetrics(operation);
+        boolean succeeded = false;
+        try {
+            T result = retryPolicy.execute(operation, attempt(operation, r, call));
+            succeeded = true;
+            return result;
+        } finally {
+            metrics.onCall(call.result(succeeded));
         }
+    }
+
+    private <T> CompletableFuture<T> submitAsync(OperationType operation, RetriableHttpOperation<T> r) {
+        if (metrics == null) {
+            return async().submit(operation, attempt(operation, r, null));
+        }
+        CallMetrics call = new CallMetrics(operation);
+        CompletableFuture<T> future = async().submit(operation, attempt(operation, r, call));
+        future.whenComplete((result, error) -> metrics.onCall(call.result(error == null)));
+        return future;
+    }
 
-        return result;
+    // one attempt of an operation, measured when metrics are on and guarded unless it guards itself
+    private <T> RetriableHttpOperation<T> attempt(OperationType operation, RetriableHttpOperation<T> r,
+            CallMetrics call) {
+        RetriableHttpOperation<T> measured = call == null ? r : call.attempt(r);
+        return r instanceof GuardedOperation ? measured : guarded(operation, measured);
+    }
+
+    // a single attempt without retries, for index management
+    private <T> T measured(OperationType operation, RetriableHttpOperation<T> r) throws IOException {
+        if (metrics == null) {
+            return r.run();
+        }
+        CallMetrics call = new CallMetrics(operation);
+        boolean succeeded = false;
+        try {
+            T result = call.attempt(r).run();
+            succeeded = true;
+            return result;
+        } finally {
+            metrics.onCall(call.result(succeeded));
+        }
     }
 
     private static class IndexBatch {
-        private List<IndexOperation> value;
+        @JsonProperty("value")
+        private final List<IndexOperation> value;
 
         IndexBatch(List<IndexOperation> operations) {
-            value = new ArrayList<>(operations);
+            value = operations;
         }
     }
 
-    private interface RetriableHttpOperation<T> {
+    interface RetriableHttpOperation<T> {
         T run() throws IOException;
     }
+
+    // an operation that passes its requests through guarded() itself
+    interface GuardedOperation<T> extends RetriableHttpOperation<T> {
+    }
+
+    interface UrlBuilder {
+        String build() throws IOException;
+    }
+
+    private interface ResponseReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    public static class Builder {
+        private final String serviceName;
+        private final String indexName;
+        private final String apiKey;
+        private String endpoint;
+        private HttpTransport transport;
+        private int maxInFlight = 64;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+        private ResultCache cache;
+        private HedgingPolicy hedging;
+        private RetryPolicy retryPolicy;
+        private ConcurrencyLimiter readLimiter;
+        private ConcurrencyLimiter indexLimiter;
+        private CircuitBreaker circuitBreaker;
+        private ClientMetrics metrics;
+        private Compression compression;
+        private String keyField;
+
+        private Builder(String serviceName, String indexName, String apiKey) {
+            this.serviceName = serviceName;
+            this.indexName = indexName;
+            this.apiKey = apiKey;
+        }
+
+        // base url of the service instead of https://<serviceName>.search.windows.net, e.g. a local test server
+        public Builder endpoint(String endpoint) {
+            this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+            return this;
+        }
+
+        public Builder transport(HttpTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        // upper bound on requests the *Async methods execute at the same time, the rest are queued
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        // what the *Async methods and BulkIndexers of this client run on, platform threads by default
+        public Builder executionMode(ExecutionMode executionMode) {
+            if (!executionMode.isSupported()) {
+                throw new IllegalArgumentException(executionMode + " needs Java 21 or later");
+            }
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        // serves repeated search, suggest and lookup requests from memory, off by default
+        public Builder cache(ResultCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        // sends a second copy of slow search, suggest and lookup requests, off by default
+        public Builder hedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        // how throttled and failed requests are retried, by default up to 4 attempts within 60 seconds
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        // adaptive limit on concurrent search, suggest and lookup requests, unlimited by default
+        public Builder readLimiter(ConcurrencyLimiter readLimiter) {
+            this.readLimiter = readLimiter;
+            return this;
+        }
+
+        // adaptive limit on concurrent index batches, kept apart so bulk loads can't starve queries
+        public Builder indexLimiter(ConcurrencyLimiter indexLimiter) {
+            this.indexLimiter = indexLimiter;
+            return this;
+        }
+
+        // fails requests fast while the service is down, off by default
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        // receives the timings, sizes and outcome of every call, e.g. a LatencyRecorder
+        public Builder metrics(ClientMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        // name of the index key, used by lookupMany(); read from the index definition when not set
+        public Builder keyField(String keyField) {
+            this.keyField = keyField;
+            return this;
+        }
+
+        // gzip request bodies and accept compressed responses, see Compression
+        public Builder compression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public SearchIndexClient build() {
+            return new SearchIndexClient(this);
+        }
+    }
 }
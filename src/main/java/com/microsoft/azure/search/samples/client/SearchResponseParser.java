@@ -0,0 +1,197 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.microsoft.azure.search.samples.results.SearchResult;
+import com.microsoft.azure.search.samples.results.TypedSearchResult;
+import com.microsoft.azure.search.samples.results.TypedSuggestResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Incremental reader for search and suggest responses: hits are handed on one at a time while the response is
+ * still being read, so only a single hit is held in memory at any point. The other top level properties can come
+ * before or after the hits and are collected into the returned result.
+ *
+ * Typed documents are bound straight from the parser. This relies on the OData rule that the "@search.*"
+ * annotations of a hit precede its properties: once the first document property shows up the rest of the object
+ * belongs to the document type.
+ */
+class SearchResponseParser {
+    private final ObjectReader valueReader;
+    private final ObjectReader facetsReader;
+    private final ObjectReader stringArrayReader;
+    private final Map<Class<?>, ObjectReader> documentReaders = new ConcurrentHashMap<>();
+
+    SearchResponseParser() {
+        this.valueReader = JsonCodecs.readerFor(Object.class);
+        this.facetsReader = JsonCodecs.readerFor(new TypeReference<Map<String, SearchResult.FacetValue[]>>() {});
+        this.stringArrayReader = JsonCodecs.readerFor(String[].class);
+    }
+
+    SearchResult parse(InputStream in, SearchHitConsumer consumer) throws IOException {
+        return parseEnvelope(in, parser -> consumer.accept(readHit(parser)));
+    }
+
+    <T> TypedSearchResult<T> parseTyped(InputStream in, Class<T> documentType) throws IOException {
+        ObjectReader documentReader = documentReader(documentType);
+        List<TypedSearchResult.TypedSearchHit<T>> hits = new ArrayList<>();
+        SearchResult result = parseEnvelope(in, parser -> hits.add(readTypedHit(parser, documentReader)));
+        return TypedSearchResult.create(hits, result.count(), result.nextLink(), result.coverage(), result.facets());
+    }
+
+    <T> TypedSuggestResult<T> parseTypedSuggest(InputStream in, Class<T> documentType) throws IOException {
+        ObjectReader documentReader = documentReader(documentType);
+        List<TypedSuggestResult.TypedSuggestHit<T>> hits = new ArrayList<>();
+        SearchResult result = parseEnvelope(in, parser -> {
+            String text = null;
+            T document = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (!field.startsWith("@search.")) {
+                    document = documentReader.readValue(parser);
+                    break;
+                }
+                parser.nextToken();
+                if ("@search.text".equals(field)) {
+                    text = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            hits.add(TypedSuggestResult.TypedSuggestHit.create(text, orEmpty(document, documentReader)));
+        });
+        return TypedSuggestResult.create(hits, result.coverage());
+    }
+
+    <T> T parseDocument(InputStream in, Class<T> documentType) throws IOException {
+        return documentReader(documentType).readValue(in);
+    }
+
+    private SearchResult parseEnvelope(InputStream in, HitReader hitReader) throws IOException {
+        try (JsonParser parser = JsonCodecs.factory().createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            long count = 0;
+            String nextLink = null;
+            Double coverage = null;
+            Map<String, SearchResult.FacetValue[]> facets = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "value":
+                        expect(token, JsonToken.START_ARRAY);
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            hitReader.read(parser);
+                        }
+                        break;
+                    case "@odata.count":
+                        count = parser.getLongValue();
+                        break;
+                    case "@odata.nextLink":
+                        nextLink = parser.getValueAsString();
+                        break;
+                    case "@search.coverage":
+                        coverage = token == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+                        break;
+                    case "@search.facets":
+                        facets = facetsReader.readValue(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return SearchResult.create(Collections.emptyList(), count, nextLink, coverage, facets);
+        }
+    }
+
+    // Reads the hit object the parser is positioned on, leaving the parser on its END_OBJECT
+    private SearchResult.SearchHit readHit(JsonParser parser) throws IOException {
+        Map<String, Object> document = new HashMap<>();
+        Map<String, String[]> highlights = null;
+        double score = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("@search.score".equals(field)) {
+                score = parser.getDoubleValue();
+            } else if ("@search.highlights".equals(field)) {
+                highlights = readHighlights(parser);
+            } else {
+                document.put(field, valueReader.readValue(parser));
+            }
+        }
+        return SearchResult.SearchHit.create(document, highlights, score);
+    }
+
+    private <T> TypedSearchResult.TypedSearchHit<T> readTypedHit(JsonParser parser, ObjectReader documentReader)
+            throws IOException {
+        Map<String, String[]> highlights = null;
+        double score = 0;
+        T document = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (!field.startsWith("@search.")) {
+                // binds the remaining properties and consumes the END_OBJECT of the hit
+                document = documentReader.readValue(parser);
+                break;
+            }
+            parser.nextToken();
+            if ("@search.score".equals(field)) {
+                score = parser.getDoubleValue();
+            } else if ("@search.highlights".equals(field)) {
+                highlights = readHighlights(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return TypedSearchResult.TypedSearchHit.create(orEmpty(document, documentReader), highlights, score);
+    }
+
+    // a hit without any document property, e.g. when $select only names fields the document doesn't have
+    private static <T> T orEmpty(T document, ObjectReader documentReader) throws IOException {
+        return document != null ? document : documentReader.readValue("{}");
+    }
+
+    // Unknown properties are ignored so that annotations such as "@odata.context" don't fail the binding
+    private ObjectReader documentReader(Class<?> documentType) {
+        return documentReaders.computeIfAbsent(documentType, type -> JsonCodecs.readerFor(type).without(
+                DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    private Map<String, String[]> readHighlights(JsonParser parser) throws IOException {
+        Map<String, String[]> highlights = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.endsWith("@odata.type")) {
+                parser.skipChildren();
+            } else {
+                highlights.put(field, stringArrayReader.readValue(parser));
+            }
+        }
+        return highlights;
+    }
+
+    // Called with the parser on the START_OBJECT of a hit, must leave it on the matching END_OBJECT
+    private interface HitReader {
+        void read(JsonParser parser) throws IOException;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException(String.format("Unexpected search response, expected %s but found %s", expected,
+                                                actual));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.net.HttpRetryException;
+
+/*
+ * 429 or 503 from the service, i.e. the request may succeed later. Carries the delay the service asked for through
+ * Retry-After, or -1 if it didn't send one.
+ */
+public class ThrottledException extends HttpRetryException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ThrottledException(String message, int statusCode, long retryAfterMillis) {
+        super(message, statusCode);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long retryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
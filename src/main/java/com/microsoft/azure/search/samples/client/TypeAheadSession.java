@@ -0,0 +1,200 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SuggestOptions;
+import com.microsoft.azure.search.samples.results.SuggestHit;
+import com.microsoft.azure.search.samples.results.SuggestResult;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Suggest calls for a single search box. Every keystroke supersedes the previous one: a request still waiting for
+ * the debounce delay is dropped and its future cancelled. When an earlier, shorter prefix returned fewer hits than
+ * "top" the service had nothing more to offer, so a longer prefix is answered by filtering that result locally.
+ * Local answers are skipped for fuzzy matching and highlighting, whose results can't be derived from a prefix.
+ */
+public class TypeAheadSession implements Closeable {
+    private static final int DEFAULT_TOP = 5;
+    private static final int MAX_REMEMBERED_PREFIXES = 32;
+
+    private final SearchIndexClient client;
+    private final String suggesterName;
+    private final SuggestOptions options;
+    private final long debounceMillis;
+    private final ScheduledExecutorService scheduler;
+    private final boolean localAnswers;
+
+    private final Map<String, SuggestResult> completeResults =
+            new LinkedHashMap<String, SuggestResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SuggestResult> eldest) {
+                    return size() > MAX_REMEMBERED_PREFIXES;
+                }
+            };
+    private CompletableFuture<SuggestResult> pending;
+    private ScheduledFuture<?> pendingTimer;
+    private CompletableFuture<SuggestResult> inFlight;
+
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final AtomicLong servedLocally = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    private TypeAheadSession(Builder builder) {
+        this.client = builder.client;
+        this.suggesterName = builder.suggesterName;
+        this.options = builder.options;
+        this.debounceMillis = builder.debounceMillis;
+        this.scheduler = ClientExecutors.sharedScheduler();
+        this.localAnswers = !options.fuzzy() && !options.highlightPreTag().isPresent()
+                && !options.highlightPostTag().isPresent();
+    }
+
+    public static Builder builder(SearchIndexClient client, String suggesterName, SuggestOptions options) {
+        return new Builder(client, suggesterName, options);
+    }
+
+    public synchronized CompletableFuture<SuggestResult> suggest(String text) {
+        supersedePending();
+        SuggestResult local = answerLocally(text);
+        if (local != null) {
+            servedLocally.incrementAndGet();
+            return CompletableFuture.completedFuture(local);
+        }
+        CompletableFuture<SuggestResult> result = new CompletableFuture<>();
+        pending = result;
+        pendingTimer = scheduler.schedule(() -> send(text, result), debounceMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    public long requestsSent() {
+        return requestsSent.get();
+    }
+
+    public long servedLocally() {
+        return servedLocally.get();
+    }
+
+    public long superseded() {
+        return superseded.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        supersedePending();
+    }
+
+    private synchronized void send(String text, CompletableFuture<SuggestResult> result) {
+        if (result.isDone()) {
+            return;
+        }
+        requestsSent.incrementAndGet();
+        inFlight = client.suggestAsync(text, suggesterName, options);
+        inFlight.whenComplete((r, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                remember(text, r);
+                result.complete(r);
+            }
+        });
+    }
+
+    private void supersedePending() {
+        if (pending != null && pending.cancel(false)) {
+            superseded.incrementAndGet();
+        }
+        if (pendingTimer != null) {
+            pendingTimer.cancel(false);
+        }
+        if (inFlight != null) {
+            // only has an effect while the request is still queued in the client
+            inFlight.cancel(false);
+        }
+        pending = null;
+        pendingTimer = null;
+        inFlight = null;
+    }
+
+    private synchronized void remember(String text, SuggestResult result) {
+        if (localAnswers && result.hits().size() < options.top().orElse(DEFAULT_TOP)) {
+            completeResults.put(normalize(text), result);
+        }
+    }
+
+    private SuggestResult answerLocally(String text) {
+        if (!localAnswers) {
+            return null;
+        }
+        String normalized = normalize(text);
+        SuggestResult best = null;
+        int bestLength = -1;
+        for (Map.Entry<String, SuggestResult> e : completeResults.entrySet()) {
+            String prefix = e.getKey();
+            if (normalized.startsWith(prefix) && prefix.length() > bestLength) {
+                best = e.getValue();
+                bestLength = prefix.length();
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        String[] terms = normalized.split("\\s+");
+        List<SuggestHit> hits = new ArrayList<>();
+        for (SuggestHit hit : best.hits()) {
+            if (matchesAllTerms(hit.text(), terms)) {
+                hits.add(hit);
+            }
+        }
+        return SuggestResult.create(hits, best.coverage());
+    }
+
+    // mirrors infix matching: every typed term has to be the prefix of some word of the suggestion
+    private static boolean matchesAllTerms(String text, String[] terms) {
+        String[] words = normalize(text).split("[^\\p{L}\\p{N}]+");
+        for (String term : terms) {
+            boolean found = term.isEmpty();
+            for (int i = 0; i < words.length && !found; i++) {
+                found = words[i].startsWith(term);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static class Builder {
+        private final SearchIndexClient client;
+        private final String suggesterName;
+        private final SuggestOptions options;
+        private long debounceMillis = 75;
+
+        private Builder(SearchIndexClient client, String suggesterName, SuggestOptions options) {
+            this.client = client;
+            this.suggesterName = suggesterName;
+            this.options = options;
+        }
+
+        public Builder debounce(long delay, TimeUnit unit) {
+            this.debounceMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        public TypeAheadSession build() {
+            return new TypeAheadSession(this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.microsoft.azure.search.samples.client;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/*
+ * Transport based on HttpURLConnection. The JDK keeps idle connections in its own keep-alive cache (sized by the
+ * "http.maxConnections" system property), but only if every response body is read to the end and closed, which is
+ * what Response.close() takes care of.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    @Override
+    public Response execute(String method, String url, Map<String, String> headers, @Nullable RequestBody body)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        // disconnecting from another thread closes the socket the request is blocked on
+        Cancellation.onAbort(connection::disconnect);
+        connection.setRequestMethod(method);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                body.writeTo(out);
+            }
+        }
+        return new UrlConnectionResponse(connection);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, connections are owned by the JDK keep-alive cache
+    }
+
+    private static class UrlConnectionResponse implements Response {
+        private final HttpURLConnection connection;
+        private final int statusCode;
+        private InputStream body;
+
+        UrlConnectionResponse(HttpURLConnection connection) throws IOException {
+            this.connection = connection;
+            this.statusCode = connection.getResponseCode();
+        }
+
+        @Override
+        public int statusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String reasonPhrase() {
+            try {
+                return connection.getResponseMessage();
+            } catch (IOException e) {
+                return "";
+            }
+        }
+
+        @Override
+        public String header(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            if (body == null) {
+                InputStream stream = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? connection.getErrorStream()
+                        : connection.getInputStream();
+                body = new DrainingInputStream(stream == null ? new ByteArrayInputStream(new byte[0]) : stream);
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+
+    // Drains whatever the caller didn't consume before closing, so the socket can be reused. Closing twice is a
+    // no-op, readers like Jackson close the body themselves before the response is closed.
+    private static class DrainingInputStream extends FilterInputStream {
+        private boolean closed;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.util.concurrent.ExecutorService;
+
+/*
+ * Java 8 stand-in for the class of the same name in src/main/java21, which the multi-release jar loads instead on
+ * Java 21 and later.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+    }
+}
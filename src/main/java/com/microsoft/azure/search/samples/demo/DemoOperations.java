@@ -1,7 +1,6 @@
 package com.microsoft.azure.search.samples.demo;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.microsoft.azure.search.samples.client.Documents;
 import com.microsoft.azure.search.samples.client.SearchIndexClient;
 import com.microsoft.azure.search.samples.index.ComplexIndexField;
 import com.microsoft.azure.search.samples.index.IndexDefinition;
@@ -45,7 +44,6 @@ import static com.microsoft.azure.search.samples.demo.Room.TAGS;
 import static com.microsoft.azure.search.samples.demo.Room.TYPE;
 
 class DemoOperations {
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
     private static final String INDEX_NAME = "hotels";
     private SearchIndexClient client;
 
@@ -168,7 +166,7 @@ class DemoOperations {
         // API and will be turned into objects with the desired shape for indexing
         List<IndexOperation> ops = new ArrayList<>();
         for (String id : new String[] { "hotel1", "hotel10","hotel11", "hotel12", "hotel13"}) {
-            Hotel hotel = OBJECT_MAPPER.readValue(getClass().getResource("/" + id), Hotel.class);
+            Hotel hotel = Documents.read(getClass().getResource("/" + id), Hotel.class);
             ops.add(IndexOperation.uploadOperation(hotel));
         }
         ops.add(IndexOperation.deleteOperation(HOTEL_ID, "1"));
@@ -0,0 +1,53 @@
+package com.microsoft.azure.search.samples.demo;
+
+import com.microsoft.azure.search.samples.client.Documents;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Turns the previous and the new version of a document into a merge that only carries the key and the top-level
+ * fields that changed, e.g. just "Rating" instead of the whole hotel with both descriptions and every room. A
+ * changed collection or complex field is sent whole, since that is how the service merges them, and a field that
+ * was dropped is sent as null so the merge clears it.
+ *
+ * Documents are compared the way the client serializes them (Documents.fields): maps by entry, other types by the
+ * properties Jackson writes, read straight from the objects and compared with equals(). Nothing is serialized to
+ * compare, so values without equals() count as changed.
+ */
+public final class DocumentDiff {
+    private DocumentDiff() {
+    }
+
+    // A merge of the changed fields, or null when the documents serialize the same
+    @Nullable
+    public static IndexOperation merge(String keyField, Object previous, Object current) {
+        Map<String, Object> changes = changedFields(keyField, previous, current);
+        return changes.size() == 1 ? null : IndexOperation.mergeOperation(changes);
+    }
+
+    // The key and the fields of "current" that differ from "previous", in serialization order
+    public static Map<String, Object> changedFields(String keyField, Object previous, Object current) {
+        Map<String, Object> before = Documents.fields(previous);
+        Map<String, Object> after = Documents.fields(current);
+        Object key = after.get(keyField);
+        if (key == null || !key.equals(before.get(keyField))) {
+            throw new IllegalArgumentException("Both documents must have the same value for key field " + keyField);
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put(keyField, key);
+        for (Map.Entry<String, Object> field : after.entrySet()) {
+            if (!Objects.equals(field.getValue(), before.get(field.getKey()))) {
+                changes.put(field.getKey(), field.getValue());
+            }
+        }
+        for (String field : before.keySet()) {
+            if (!after.containsKey(field) && before.get(field) != null) {
+                changes.put(field, null);
+            }
+        }
+        return changes;
+    }
+}
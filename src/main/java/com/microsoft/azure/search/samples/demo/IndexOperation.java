@@ -1,38 +1,79 @@
 package com.microsoft.azure.search.samples.demo;
 
-import com.fasterxml.jackson.annotation.JsonValue;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
 /*
- * Only "uploadOperation" and "deleteOperation" are modeled here, there is
- * also "merge" and "mergeOrUpload" that can capture different scenarios.
+ * "upload" replaces the whole document, "merge" and "mergeOrUpload" only set the fields the document has, and
+ * "delete" only needs the key. DocumentDiff builds merges that hold just the fields that changed.
+ *
+ * The document is kept as is and written inline next to "@search.action" when the batch is serialized, so no
+ * intermediate map is built per document. Jackson caches the unwrapping serializer per document class.
  */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE,
+                getterVisibility = JsonAutoDetect.Visibility.NONE,
+                isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+@JsonPropertyOrder({ "@search.action" })
 public class IndexOperation {
-    private Map<String, Object> payload;
+    @JsonProperty("@search.action")
+    private final String action;
 
-    private IndexOperation(Map<String, Object> map) {
-        this.payload = map;
+    @JsonUnwrapped
+    private final Object document;
+
+    private final Map<String, Object> fields;
+
+    private IndexOperation(String action, Object document, Map<String, Object> fields) {
+        this.action = action;
+        this.document = document;
+        this.fields = fields;
+    }
+
+    // map documents can't be unwrapped by Jackson, their entries are written as "any" properties instead
+    @JsonAnyGetter
+    private Map<String, Object> fields() {
+        return this.fields;
+    }
+
+    public String action() {
+        return this.action;
     }
 
-    @JsonValue
-    private Map<String, Object> toJson() {
-        return this.payload;
+    // the document as it was passed in, or the key map of a delete operation
+    public Object document() {
+        return this.document != null ? this.document : this.fields;
     }
 
-    static IndexOperation uploadOperation(Object object) {
-        Map<String, Object> map = new ObjectMapper().convertValue(object, Map.class);
-        map.put("@search.action", "upload");
-        return new IndexOperation(map);
+    public static IndexOperation uploadOperation(Object object) {
+        return create("upload", object);
     }
 
-    static IndexOperation deleteOperation(String keyName, String keyValue) {
-        Map<String, Object> map = new HashMap<>();
-        map.put(keyName, keyValue);
-        map.put("@search.action", "delete");
+    // Sets the fields of the document and leaves the others alone; fails for keys that aren't in the index. Fields
+    // serialized as null are cleared, so partial updates are best passed as a map of the key and changed fields.
+    public static IndexOperation mergeOperation(Object object) {
+        return create("merge", object);
+    }
+
+    // A merge for documents that exist and an upload for those that don't
+    public static IndexOperation mergeOrUploadOperation(Object object) {
+        return create("mergeOrUpload", object);
+    }
+
+    public static IndexOperation deleteOperation(String keyName, String keyValue) {
+        return new IndexOperation("delete", null, Collections.singletonMap(keyName, keyValue));
+    }
 
-        return new IndexOperation(map);
+    @SuppressWarnings("unchecked")
+    private static IndexOperation create(String action, Object document) {
+        if (document instanceof Map) {
+            return new IndexOperation(action, null, (Map<String, Object>) document);
+        }
+        return new IndexOperation(action, document, Collections.emptyMap());
     }
 }
@@ -38,6 +38,8 @@ public abstract class SearchOptions {
 
     public abstract Optional<Double> minimumCoverage();
 
+    public abstract Builder toBuilder();
+
     public static Builder builder() {
         return new com.microsoft.azure.search.samples.options.AutoValue_SearchOptions.Builder()
                 .facets(new ArrayList<>())
@@ -0,0 +1,15 @@
+package com.microsoft.azure.search.samples.options;
+
+import com.google.auto.value.AutoValue;
+
+// One query of a SearchIndexClient.multiSearch() call
+@AutoValue
+public abstract class SearchRequest {
+    public abstract String search();
+
+    public abstract SearchOptions options();
+
+    public static SearchRequest create(String search, SearchOptions options) {
+        return new com.microsoft.azure.search.samples.options.AutoValue_SearchRequest(search, options);
+    }
+}
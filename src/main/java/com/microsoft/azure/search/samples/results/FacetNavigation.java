@@ -0,0 +1,50 @@
+package com.microsoft.azure.search.samples.results;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A page of results with the counts of every facet, each counted as if its own selection wasn't applied
+@AutoValue
+public abstract class FacetNavigation {
+    // the page, with every selection applied
+    public abstract SearchResult results();
+
+    // buckets by facet name, in the order the facets were declared
+    public abstract Map<String, List<Bucket>> facets();
+
+    // searches sent, at most one plus one per facet with a selection
+    public abstract int requests();
+
+    // facets whose counts came from the cache
+    public abstract int cachedFacets();
+
+    public List<Bucket> facet(String name) {
+        List<Bucket> buckets = facets().get(name);
+        return buckets != null ? buckets : Collections.emptyList();
+    }
+
+    public static FacetNavigation create(SearchResult results, Map<String, List<Bucket>> facets, int requests,
+            int cachedFacets) {
+        return new com.microsoft.azure.search.samples.results.AutoValue_FacetNavigation(results, facets, requests,
+                                                                                        cachedFacets);
+    }
+
+    @AutoValue
+    public abstract static class Bucket {
+        // pass it back as a selection to drill down
+        public abstract SearchResult.FacetValue value();
+
+        public abstract boolean selected();
+
+        public int count() {
+            return value().count();
+        }
+
+        public static Bucket create(SearchResult.FacetValue value, boolean selected) {
+            return new com.microsoft.azure.search.samples.results.AutoValue_FacetNavigation_Bucket(value, selected);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.microsoft.azure.search.samples.results;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.Map;
+import java.util.Set;
+
+@AutoValue
+public abstract class LookupManyResult {
+    // found documents by key, in the order the keys were given
+    public abstract Map<String, Map<String, Object>> documents();
+
+    public abstract Set<String> missingKeys();
+
+    // search requests the lookups took
+    public abstract int requests();
+
+    public static LookupManyResult create(Map<String, Map<String, Object>> documents, Set<String> missingKeys,
+            int requests) {
+        return new com.microsoft.azure.search.samples.results.AutoValue_LookupManyResult(documents, missingKeys,
+                                                                                         requests);
+    }
+}
@@ -0,0 +1,67 @@
+package com.microsoft.azure.search.samples.results;
+
+import com.google.auto.value.AutoValue;
+import com.microsoft.azure.search.samples.options.SearchRequest;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+
+// The outcome of every query of a multiSearch() call, in request order
+@AutoValue
+public abstract class MultiSearchResult {
+    public abstract List<Item> items();
+
+    // wall time of the whole call
+    public abstract long elapsedNanos();
+
+    public Item item(int index) {
+        return items().get(index);
+    }
+
+    public int failures() {
+        int failures = 0;
+        for (Item item : items()) {
+            if (item.error() != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    public static MultiSearchResult create(List<Item> items, long elapsedNanos) {
+        return new com.microsoft.azure.search.samples.results.AutoValue_MultiSearchResult(items, elapsedNanos);
+    }
+
+    @AutoValue
+    public abstract static class Item {
+        public abstract SearchRequest request();
+
+        @Nullable
+        public abstract SearchResult result();
+
+        // the reason the query failed, an InterruptedIOException if it didn't complete before the deadline
+        @Nullable
+        public abstract IOException error();
+
+        // from sending the query until it completed, or until the deadline; zero if it was never sent
+        public abstract long latencyNanos();
+
+        public boolean succeeded() {
+            return error() == null;
+        }
+
+        // the result, or the error of a failed query thrown
+        public SearchResult get() throws IOException {
+            if (error() != null) {
+                throw error();
+            }
+            return result();
+        }
+
+        public static Item create(SearchRequest request, SearchResult result, IOException error, long latencyNanos) {
+            return new com.microsoft.azure.search.samples.results.AutoValue_MultiSearchResult_Item(request, result,
+                                                                                                 error, latencyNanos);
+        }
+    }
+}
@@ -63,6 +63,10 @@ public abstract class SearchResult {
                 jsonMap.remove("@search.highlights");
             }
             Map<String, Object> document = jsonMap;
+            return create(document, highlights, score);
+        }
+
+        public static SearchHit create(Map<String, Object> document, Map<String, String[]> highlights, double score) {
             return new com.microsoft.azure.search.samples.results.AutoValue_SearchResult_SearchHit(document, highlights,
                                                                                                    score);
         }
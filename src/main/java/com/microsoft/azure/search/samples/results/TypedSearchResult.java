@@ -0,0 +1,44 @@
+package com.microsoft.azure.search.samples.results;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+@AutoValue
+public abstract class TypedSearchResult<T> {
+    public abstract List<TypedSearchHit<T>> hits();
+
+    public abstract long count();
+
+    @Nullable
+    public abstract String nextLink();
+
+    @Nullable
+    public abstract Double coverage();
+
+    @Nullable
+    public abstract Map<String, SearchResult.FacetValue[]> facets();
+
+    public static <T> TypedSearchResult<T> create(List<TypedSearchHit<T>> hits, long count, String nextLink,
+            Double coverage, Map<String, SearchResult.FacetValue[]> facets) {
+        return new com.microsoft.azure.search.samples.results.AutoValue_TypedSearchResult<>(hits, count, nextLink,
+                                                                                            coverage, facets);
+    }
+
+    @AutoValue
+    public abstract static class TypedSearchHit<T> {
+        public abstract T document();
+
+        @Nullable
+        public abstract Map<String, String[]> highlights();
+
+        public abstract double score();
+
+        public static <T> TypedSearchHit<T> create(T document, Map<String, String[]> highlights, double score) {
+            return new com.microsoft.azure.search.samples.results.AutoValue_TypedSearchResult_TypedSearchHit<>(
+                    document, highlights, score);
+        }
+    }
+}
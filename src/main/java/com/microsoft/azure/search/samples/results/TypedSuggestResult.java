@@ -0,0 +1,30 @@
+package com.microsoft.azure.search.samples.results;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+@AutoValue
+public abstract class TypedSuggestResult<T> {
+    public abstract List<TypedSuggestHit<T>> hits();
+
+    @Nullable
+    public abstract Double coverage();
+
+    public static <T> TypedSuggestResult<T> create(List<TypedSuggestHit<T>> hits, Double coverage) {
+        return new com.microsoft.azure.search.samples.results.AutoValue_TypedSuggestResult<>(hits, coverage);
+    }
+
+    @AutoValue
+    public abstract static class TypedSuggestHit<T> {
+        public abstract String text();
+
+        public abstract T document();
+
+        public static <T> TypedSuggestHit<T> create(String text, T document) {
+            return new com.microsoft.azure.search.samples.results.AutoValue_TypedSuggestResult_TypedSuggestHit<>(
+                    text, document);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.microsoft.azure.search.samples.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Java 21 version of VirtualThreads, compiled into META-INF/versions/21 of the multi-release jar
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+}
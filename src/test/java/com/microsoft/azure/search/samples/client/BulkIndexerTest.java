@@ -0,0 +1,175 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.results.IndexBatchOperationResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkIndexerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static SearchIndexClient client(StubTransport transport) {
+        return SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .retryPolicy(RetryPolicy.noRetries())
+                .build();
+    }
+
+    private static IndexOperation upload(String key, int version) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("HotelId", key);
+        document.put("Version", version);
+        return IndexOperation.uploadOperation(document);
+    }
+
+    // Applies every document after a random delay, the way concurrent batches race on the service
+    private static StubTransport.Reply apply(byte[] body, Map<String, Integer> index) throws IOException {
+        StringBuilder results = new StringBuilder("{\"value\":[");
+        for (JsonNode document : OBJECT_MAPPER.readTree(body).path("value")) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(4));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            String key = document.path("HotelId").asText();
+            index.put(key, document.path("Version").asInt());
+            if (results.length() > 10) {
+                results.append(',');
+            }
+            results.append("{\"key\":\"").append(key).append("\",\"status\":true,\"statusCode\":200}");
+        }
+        return StubTransport.Reply.ok(results.append("]}").toString());
+    }
+
+    @Test
+    public void updatesToTheSameDocumentAreAppliedInOrder() throws IOException {
+        for (int run = 0; run < 5; run++) {
+            Map<String, Integer> index = new ConcurrentHashMap<>();
+            StubTransport transport = new StubTransport((method, url, body) -> apply(body, index));
+            try (SearchIndexClient client = client(transport);
+                 BulkIndexer indexer = BulkIndexer.builder(client, "HotelId")
+                         .maxBatchDocuments(1)
+                         .concurrency(8)
+                         .build()) {
+                for (int version = 0; version < 40; version++) {
+                    indexer.add(upload("1", version));
+                    indexer.add(upload(String.valueOf(100 + version), version));
+                }
+                indexer.flush();
+                assertEquals(80, indexer.stats().documentsSucceeded());
+            }
+            assertEquals(Integer.valueOf(39), index.get("1"));
+        }
+    }
+
+    @Test
+    public void permanentErrorsAreNotResubmitted() throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> StubTransport.Reply.error(404));
+        try (SearchIndexClient client = client(transport);
+             BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").retryDelayMillis(1).build()) {
+            indexer.add(upload("1", 0));
+            indexer.add(upload("2", 0));
+            indexer.flush();
+            assertEquals(1, transport.requests());
+            assertEquals(2, indexer.stats().documentsFailed());
+            List<IndexBatchOperationResult> failures = indexer.failures();
+            assertEquals(2, failures.size());
+            assertEquals(404, failures.get(0).statusCode());
+        }
+    }
+
+    @Test
+    public void throttledBatchesAreResubmitted() throws IOException {
+        Map<String, Integer> index = new ConcurrentHashMap<>();
+        AtomicInteger attempts = new AtomicInteger();
+        StubTransport transport = new StubTransport((method, url, body) -> attempts.incrementAndGet() <= 2
+                ? StubTransport.Reply.error(503)
+                : apply(body, index));
+        try (SearchIndexClient client = client(transport);
+             BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").retryDelayMillis(1).build()) {
+            indexer.add(upload("1", 0));
+            indexer.flush();
+            assertEquals(3, transport.requests());
+            assertEquals(1, indexer.stats().documentsSucceeded());
+            assertEquals(0, indexer.stats().documentsFailed());
+        }
+    }
+
+    @Test
+    public void onlyTransientItemFailuresAreResubmitted() throws IOException {
+        Map<String, Integer> index = new ConcurrentHashMap<>();
+        List<List<String>> requests = new CopyOnWriteArrayList<>();
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            List<String> keys = new ArrayList<>();
+            for (JsonNode document : OBJECT_MAPPER.readTree(body).path("value")) {
+                keys.add(document.path("HotelId").asText());
+            }
+            requests.add(keys);
+            if (requests.size() > 1) {
+                return apply(body, index);
+            }
+            return StubTransport.Reply.of(207, "{\"value\":["
+                    + "{\"key\":\"1\",\"status\":false,\"errorMessage\":\"Too busy\",\"statusCode\":503},"
+                    + "{\"key\":\"2\",\"status\":false,\"errorMessage\":\"Bad field\",\"statusCode\":400},"
+                    + "{\"key\":\"3\",\"status\":true,\"statusCode\":201}]}");
+        });
+        try (SearchIndexClient client = client(transport);
+             BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").retryDelayMillis(1).build()) {
+            indexer.add(upload("1", 0));
+            indexer.add(upload("2", 0));
+            indexer.add(upload("3", 0));
+            indexer.flush();
+            assertEquals(Arrays.asList(Arrays.asList("1", "2", "3"), Collections.singletonList("1")), requests);
+            assertEquals(2, indexer.stats().documentsSucceeded());
+            assertEquals(1, indexer.stats().documentsFailed());
+            List<IndexBatchOperationResult> failures = indexer.failures();
+            assertEquals(1, failures.size());
+            assertEquals("2", failures.get(0).key());
+            assertEquals(400, failures.get(0).statusCode());
+        }
+        assertEquals(Integer.valueOf(0), index.get("1"));
+    }
+
+    @Test
+    public void throttlingThatOutlastsTheRetriesKeepsItsStatus() throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> StubTransport.Reply.error(429));
+        try (SearchIndexClient client = client(transport);
+             BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").retryDelayMillis(1).maxRetries(2).build()) {
+            indexer.add(upload("1", 0));
+            indexer.flush();
+            assertEquals(3, transport.requests());
+            assertEquals(429, indexer.failures().get(0).statusCode());
+        }
+    }
+
+    @Test
+    public void unexpectedExceptionsCountAsFailures() throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            throw new IllegalStateException("broken transport");
+        });
+        try (SearchIndexClient client = client(transport);
+             BulkIndexer indexer = BulkIndexer.builder(client, "HotelId").build()) {
+            indexer.add(upload("1", 0));
+            indexer.add(upload("2", 0));
+            indexer.flush();
+            assertEquals(2, indexer.stats().documentsFailed());
+            assertEquals(2, indexer.failures().size());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static CircuitBreaker halfOpen(CircuitBreaker breaker) throws IOException, InterruptedException {
+        assertFalse(breaker.acquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(60);
+        return breaker;
+    }
+
+    private static void assertRejected(CircuitBreaker breaker) throws IOException {
+        try {
+            breaker.acquire();
+            fail("Expected the breaker to reject the request");
+        } catch (RequestRejectedException expected) {
+            // a trial is in flight
+        }
+    }
+
+    @Test
+    public void onlyOneTrialAtATime() throws Exception {
+        CircuitBreaker breaker = halfOpen(CircuitBreaker.builder()
+                .failureThreshold(1)
+                .openDuration(50, TimeUnit.MILLISECONDS)
+                .build());
+        assertTrue(breaker.acquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertRejected(breaker);
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertFalse(breaker.acquire());
+    }
+
+    @Test
+    public void ignoredRequestsOtherThanTheTrialDoNotAdmitAnotherTrial() throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .failureThreshold(1)
+                .openDuration(50, TimeUnit.MILLISECONDS)
+                .build();
+        // let through while the breaker was still closed, it finishes during the trial
+        assertFalse(breaker.acquire());
+        halfOpen(breaker);
+        assertTrue(breaker.acquire());
+        breaker.onIgnored(false);
+        assertRejected(breaker);
+        // an ignored trial makes way for the next one
+        breaker.onIgnored(true);
+        assertTrue(breaker.acquire());
+        assertRejected(breaker);
+        assertEquals(2, breaker.rejections());
+    }
+}
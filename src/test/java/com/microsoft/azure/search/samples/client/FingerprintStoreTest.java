@@ -0,0 +1,107 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class FingerprintStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Set<String> unseen(FingerprintStore store) {
+        Set<String> keys = new HashSet<>();
+        store.forEachUnseen(keys::add);
+        return keys;
+    }
+
+    private static Set<String> set(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+
+    private Set<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    @Test
+    public void runsRoundTripThroughCommitAndReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("hotels.fingerprints");
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(0, store.previousKeys());
+            for (String key : Arrays.asList("a", "b", "c", "d")) {
+                assertEquals(FingerprintStore.UNKNOWN, store.update(key, key.charAt(0)));
+            }
+            store.commit();
+        }
+
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(4, store.previousKeys());
+            assertEquals('a', store.update("a", 'a'));
+            assertEquals('b', store.update("b", 20));
+            // a key that appears twice in one run, the later fingerprint is the one kept
+            assertEquals('b', store.update("b", 21));
+            assertEquals(FingerprintStore.UNKNOWN, store.update("e", 'e'));
+            assertEquals(set("c", "d"), unseen(store));
+            // "c" is deleted, deleting "d" fails so it stays unknown
+            store.forget("d");
+            store.commit();
+        }
+        // the old generation is gone, the store still mapped it while committing
+        assertEquals(set("hotels.fingerprints", "hotels.fingerprints.2"), files());
+
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(4, store.previousKeys());
+            assertEquals(21, store.update("b", 21));
+            assertEquals(set("a", "d", "e"), unseen(store));
+            store.keepUnseen();
+            store.commit();
+        }
+
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(4, store.previousKeys());
+            assertEquals('a', store.update("a", 'a'));
+            assertEquals(FingerprintStore.UNKNOWN, store.update("c", 'c'));
+            // the failed delete is tried again, with no fingerprint known for it
+            assertEquals(FingerprintStore.UNKNOWN, store.update("d", 'd'));
+            assertEquals('e', store.update("e", 'e'));
+            // not committed
+        }
+        assertEquals(set("hotels.fingerprints", "hotels.fingerprints.3"), files());
+
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(4, store.previousKeys());
+            assertEquals(set("a", "b", "d", "e"), unseen(store));
+        }
+    }
+
+    @Test
+    public void generationsLeftBehindAreDeletedOnOpen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("hotels.fingerprints");
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            store.update("a", 1);
+            store.commit();
+        }
+        // as if deleting the old generation had failed, and a run had crashed before committing
+        Files.write(path.resolveSibling("hotels.fingerprints.0"), new byte[0]);
+        Files.write(path.resolveSibling("hotels.fingerprints.7"), new byte[0]);
+        Files.write(path.resolveSibling("hotels.fingerprints.txt"), new byte[0]);
+        try (FingerprintStore store = FingerprintStore.open(path)) {
+            assertEquals(1, store.previousKeys());
+            assertEquals(set("hotels.fingerprints", "hotels.fingerprints.1", "hotels.fingerprints.2",
+                             "hotels.fingerprints.txt"), files());
+        }
+        assertEquals(set("hotels.fingerprints", "hotels.fingerprints.1", "hotels.fingerprints.txt"), files());
+    }
+}
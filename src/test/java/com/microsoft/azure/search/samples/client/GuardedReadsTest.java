@@ -0,0 +1,146 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GuardedReadsTest {
+    private static final StubTransport.Reply DOCUMENT = StubTransport.Reply.ok("{\"HotelId\":\"1\"}");
+
+    private static SearchIndexClient.Builder client(StubTransport transport) {
+        return SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .cache(ResultCache.builder().build())
+                .retryPolicy(RetryPolicy.noRetries());
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Test
+    public void cacheHitsAreServedWhileTheBreakerIsOpen() throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> url.contains("docs('1')")
+                ? DOCUMENT
+                : StubTransport.Reply.error(500));
+        CircuitBreaker breaker = CircuitBreaker.builder().failureThreshold(1).build();
+        try (SearchIndexClient client = client(transport).circuitBreaker(breaker).build()) {
+            client.lookup("1");
+            try {
+                client.lookup("2");
+                fail("Expected the lookup to fail");
+            } catch (HttpErrorException expected) {
+                // opens the breaker
+            }
+            assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+            assertEquals("1", client.lookup("1").get("HotelId"));
+            try {
+                client.lookup("3");
+                fail("Expected the open breaker to reject the lookup");
+            } catch (RequestRejectedException expected) {
+                // only requests that go to the service are rejected
+            }
+        }
+        assertEquals(2, transport.requests());
+        assertEquals(1, breaker.rejections());
+    }
+
+    @Test
+    public void throttlingDoesNotOpenTheBreaker() throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> url.contains("docs('1')")
+                ? StubTransport.Reply.error(503)
+                : StubTransport.Reply.error(429));
+        CircuitBreaker breaker = CircuitBreaker.builder().failureThreshold(2).build();
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(10).backoffRatio(0.5).build();
+        try (SearchIndexClient client = client(transport).circuitBreaker(breaker).readLimiter(limiter).build()) {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    client.lookup(i % 2 == 0 ? "1" : "2");
+                    fail("Expected the lookup to be throttled");
+                } catch (ThrottledException expected) {
+                    // the service is busy, not down
+                }
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.rejections());
+        // but the limiter backs off on both
+        assertEquals(1, limiter.limit());
+    }
+
+    @Test
+    public void cacheHitsDoNotTakeAPermit() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            if (url.contains("docs('2')")) {
+                sent.countDown();
+                await(release);
+            }
+            return DOCUMENT;
+        });
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(1).maxLimit(1).maxQueueLength(0).build();
+        try (SearchIndexClient client = client(transport).readLimiter(limiter).build()) {
+            client.lookup("1");
+            CompletableFuture<?> slow = client.lookupAsync("2");
+            assertTrue(sent.await(1, TimeUnit.SECONDS));
+            // the only permit is taken by the slow lookup
+            for (int i = 0; i < 10; i++) {
+                assertEquals("1", client.lookup("1").get("HotelId"));
+            }
+            assertEquals(1, limiter.inFlight());
+            release.countDown();
+            slow.get(1, TimeUnit.SECONDS);
+        }
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.rejections());
+    }
+
+    @Test
+    public void everyHedgedAttemptTakesAPermit() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(2).maxLimit(2).build();
+        int[] inFlightSeenByHedge = new int[1];
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            if (requests.incrementAndGet() > 1) {
+                inFlightSeenByHedge[0] = limiter.inFlight();
+                return DOCUMENT;
+            }
+            // the first attempt stalls until the winning hedge aborts it
+            CountDownLatch abort = new CountDownLatch(1);
+            Cancellation.onAbort(abort::countDown);
+            await(abort);
+            throw new IOException("connection aborted");
+        });
+        CircuitBreaker breaker = CircuitBreaker.builder().failureThreshold(1).build();
+        HedgingPolicy hedging = HedgingPolicy.builder().delay(20, TimeUnit.MILLISECONDS).budgetRatio(1).build();
+        try (SearchIndexClient client = SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .hedging(hedging)
+                .retryPolicy(RetryPolicy.noRetries())
+                .readLimiter(limiter)
+                .circuitBreaker(breaker)
+                .build()) {
+            assertEquals("1", client.lookup("1").get("HotelId"));
+        }
+        assertEquals(1, hedging.hedgeWins());
+        assertEquals(2, inFlightSeenByHedge[0]);
+        assertEquals(0, limiter.inFlight());
+        // the aborted attempt is neither a failure of the service nor a reason to back off
+        assertEquals(2, limiter.limit());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
@@ -0,0 +1,145 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgingPolicyTest {
+    private static final StubTransport.Reply DOCUMENT = StubTransport.Reply.ok("{\"HotelId\":\"1\"}");
+
+    private static SearchIndexClient client(StubTransport transport, HedgingPolicy hedging) {
+        return SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .hedging(hedging)
+                .retryPolicy(RetryPolicy.noRetries())
+                .build();
+    }
+
+    private static boolean hedgeThreadsRunning() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("search-client-hedge") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void fastReadsRunOnTheCallerWithoutHedgeThreads() throws IOException {
+        Thread caller = Thread.currentThread();
+        AtomicBoolean otherThread = new AtomicBoolean();
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            otherThread.compareAndSet(false, Thread.currentThread() != caller);
+            return DOCUMENT;
+        });
+        HedgingPolicy hedging = HedgingPolicy.builder().delay(1, TimeUnit.SECONDS).budgetRatio(1).build();
+        try (SearchIndexClient client = client(transport, hedging)) {
+            for (int i = 0; i < 50; i++) {
+                assertEquals("1", client.lookup("1").get("HotelId"));
+            }
+            assertFalse(otherThread.get());
+            assertEquals(0, hedging.hedgesSent());
+            assertFalse(hedgeThreadsRunning());
+        }
+    }
+
+    @Test
+    public void winningHedgeAbortsTheSlowAttempt() throws IOException, InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch aborted = new CountDownLatch(1);
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            if (requests.incrementAndGet() > 1) {
+                return DOCUMENT;
+            }
+            // the first attempt hangs until it is aborted, like a read on a stalled connection
+            CountDownLatch abort = new CountDownLatch(1);
+            Cancellation.onAbort(abort::countDown);
+            try {
+                abort.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            aborted.countDown();
+            throw new IOException("connection aborted");
+        });
+        HedgingPolicy hedging = HedgingPolicy.builder().delay(20, TimeUnit.MILLISECONDS).budgetRatio(1).build();
+        try (SearchIndexClient client = client(transport, hedging)) {
+            long start = System.nanoTime();
+            Map<String, Object> document = client.lookup("1");
+            assertEquals("1", document.get("HotelId"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            assertTrue(aborted.await(1, TimeUnit.SECONDS));
+            assertEquals(1, hedging.hedgesSent());
+            assertEquals(1, hedging.hedgeWins());
+            assertTrue(hedgeThreadsRunning());
+        }
+        for (int i = 0; i < 100 && hedgeThreadsRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(hedgeThreadsRunning());
+    }
+
+    @Test
+    public void failsOnlyWhenBothAttemptsFail() {
+        AtomicInteger requests = new AtomicInteger();
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            int request = requests.incrementAndGet();
+            try {
+                Thread.sleep(request == 1 ? 100 : 0);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return StubTransport.Reply.error(request == 1 ? 500 : 400);
+        });
+        HedgingPolicy hedging = HedgingPolicy.builder().delay(20, TimeUnit.MILLISECONDS).budgetRatio(1).build();
+        try (SearchIndexClient client = client(transport, hedging)) {
+            client.lookup("1");
+            throw new AssertionError("Expected the lookup to fail");
+        } catch (IOException e) {
+            // the error of whichever attempt failed last
+            assertTrue(e instanceof HttpErrorException);
+            assertEquals(500, ((HttpErrorException) e).statusCode());
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void cancellingAnAsyncReadAbortsBothAttempts() throws IOException, InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch aborted = new CountDownLatch(2);
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            requests.incrementAndGet();
+            CountDownLatch abort = new CountDownLatch(1);
+            Cancellation.onAbort(abort::countDown);
+            started.countDown();
+            try {
+                abort.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            aborted.countDown();
+            throw new IOException("connection aborted");
+        });
+        HedgingPolicy hedging = HedgingPolicy.builder().delay(20, TimeUnit.MILLISECONDS).budgetRatio(1).build();
+        try (SearchIndexClient client = client(transport, hedging)) {
+            CompletableFuture<Map<String, Object>> lookup = client.lookupAsync("1");
+            // the primary attempt and its hedge are both stalled
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            lookup.cancel(false);
+            assertTrue(aborted.await(1, TimeUnit.SECONDS));
+        }
+        assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,132 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.results.LookupManyResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LookupManyTest {
+    private static final int MAX_FILTER_CHARS = 3000;
+
+    private final Queue<String> filters = new ConcurrentLinkedQueue<>();
+
+    private LookupManyResult lookupMany(List<String> keys) throws IOException {
+        return lookupMany(keys, Collections.emptySet());
+    }
+
+    // the stub index holds a document for each of the stored keys
+    private LookupManyResult lookupMany(List<String> keys, Set<String> stored) throws IOException {
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            int start = url.indexOf("&$filter=") + "&$filter=".length();
+            int end = url.indexOf('&', start);
+            String filter = end < 0 ? url.substring(start) : url.substring(start, end);
+            filters.add(filter);
+            if (stored.isEmpty()) {
+                return StubTransport.Reply.ok("{\"value\":[]}");
+            }
+            // search.in(HotelId, 'a,b,c', ',')
+            String decoded = URLDecoder.decode(filter, "UTF-8");
+            String list = decoded.substring(decoded.indexOf('\'') + 1, decoded.indexOf("', ','"));
+            StringBuilder hits = new StringBuilder("{\"value\":[");
+            for (String key : list.split(",")) {
+                if (stored.contains(key)) {
+                    hits.append(hits.length() > 10 ? "," : "")
+                            .append("{\"@search.score\":1.0,\"HotelId\":\"").append(key).append("\"}");
+                }
+            }
+            return StubTransport.Reply.ok(hits.append("]}").toString());
+        });
+        try (SearchIndexClient client = SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .keyField("HotelId")
+                .build()) {
+            return client.lookupMany(keys);
+        }
+    }
+
+    private void assertFiltersFit() {
+        for (String filter : filters) {
+            assertTrue("encoded filter of " + filter.length() + " characters", filter.length() <= MAX_FILTER_CHARS);
+        }
+    }
+
+    @Test
+    public void asciiKeysArePackedIntoFewRequests() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            keys.add(String.valueOf(i));
+        }
+        LookupManyResult result = lookupMany(keys);
+        assertEquals(3, result.requests());
+        assertEquals(250, result.missingKeys().size());
+        assertFiltersFit();
+    }
+
+    @Test
+    public void foundDocumentsAreMappedBackToTheirKeys() throws IOException {
+        List<String> keys = new ArrayList<>();
+        Set<String> stored = new HashSet<>();
+        for (int i = 0; i < 150; i++) {
+            keys.add("hotel-" + i);
+            if (i % 3 == 0) {
+                stored.add("hotel-" + i);
+            }
+        }
+        // repeated keys are looked up once
+        keys.add("hotel-0");
+        keys.add("hotel-1");
+        LookupManyResult result = lookupMany(keys, stored);
+        assertEquals(2, result.requests());
+        assertEquals(50, result.documents().size());
+        assertEquals(100, result.missingKeys().size());
+        int i = 0;
+        for (Map.Entry<String, Map<String, Object>> entry : result.documents().entrySet()) {
+            // in the order they were asked for
+            assertEquals("hotel-" + i, entry.getKey());
+            assertEquals(entry.getKey(), entry.getValue().get("HotelId"));
+            i += 3;
+        }
+        for (String key : result.missingKeys()) {
+            assertFalse(stored.contains(key));
+        }
+        assertTrue(result.missingKeys().contains("hotel-1"));
+    }
+
+    @Test
+    public void nonAsciiKeysAreMeasuredEncoded() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // nine characters, 57 once encoded
+            keys.add("\u9152\u5e97\u9152\u5e97\u9152\u5e97" + String.format("%03d", i));
+        }
+        LookupManyResult result = lookupMany(keys);
+        assertEquals(300, result.missingKeys().size());
+        assertEquals(result.requests(), filters.size());
+        assertFiltersFit();
+    }
+
+    @Test
+    public void keysWithEveryDelimiterStillFit() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            keys.add("a,|;~^'" + i);
+        }
+        LookupManyResult result = lookupMany(keys);
+        assertEquals(200, result.missingKeys().size());
+        assertTrue(filters.peek().contains("+or+"));
+        assertFiltersFit();
+    }
+}
@@ -0,0 +1,127 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.options.SearchRequest;
+import com.microsoft.azure.search.samples.results.MultiSearchResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSearchTest {
+    private static SearchIndexClient.Builder client(StubTransport transport) {
+        return SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .retryPolicy(RetryPolicy.noRetries());
+    }
+
+    private static List<SearchRequest> requests(String... searches) {
+        List<SearchRequest> requests = new ArrayList<>();
+        for (String search : searches) {
+            requests.add(SearchRequest.create(search, SearchOptions.builder().build()));
+        }
+        return requests;
+    }
+
+    private static String search(String url) {
+        int start = url.indexOf("&search=") + "&search=".length();
+        int end = url.indexOf('&', start);
+        return end < 0 ? url.substring(start) : url.substring(start, end);
+    }
+
+    // a single hit whose HotelId is the search text
+    private static StubTransport.Reply hit(String search) {
+        return StubTransport.Reply.ok("{\"value\":[{\"@search.score\":1.0,\"HotelId\":\"" + search + "\"}]}");
+    }
+
+    private static String hotelId(MultiSearchResult.Item item) throws IOException {
+        return (String) item.get().hits().get(0).document().get("HotelId");
+    }
+
+    @Test
+    public void itemsAreInRequestOrder() throws Exception {
+        List<String> searches = Arrays.asList("one", "two", "three", "four", "five", "six");
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            String search = search(url);
+            try {
+                // the first searches answer last
+                Thread.sleep(10L * (searches.size() - searches.indexOf(search)));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return hit(search);
+        });
+        try (SearchIndexClient client = client(transport).maxInFlight(6).build()) {
+            MultiSearchResult result = client.multiSearch(requests(searches.toArray(new String[0])), 6, 5,
+                                                          TimeUnit.SECONDS);
+            assertEquals(6, result.items().size());
+            assertEquals(0, result.failures());
+            for (int i = 0; i < searches.size(); i++) {
+                assertEquals(searches.get(i), result.item(i).request().search());
+                assertEquals(searches.get(i), hotelId(result.item(i)));
+            }
+        }
+    }
+
+    @Test
+    public void aFailedSearchDoesNotAffectTheOthers() throws Exception {
+        StubTransport transport = new StubTransport((method, url, body) -> search(url).equals("bad")
+                ? StubTransport.Reply.error(400)
+                : hit(search(url)));
+        try (SearchIndexClient client = client(transport).build()) {
+            MultiSearchResult result = client.multiSearch(requests("one", "bad", "three"), 2, 5, TimeUnit.SECONDS);
+            assertEquals(1, result.failures());
+            assertEquals("one", hotelId(result.item(0)));
+            assertFalse(result.item(1).succeeded());
+            assertEquals(400, ((HttpErrorException) result.item(1).error()).statusCode());
+            assertEquals("three", hotelId(result.item(2)));
+        }
+        assertEquals(3, transport.requests());
+    }
+
+    @Test
+    public void searchesStillRunningAtTheDeadlineAreAborted() throws Exception {
+        CountDownLatch aborted = new CountDownLatch(1);
+        StubTransport transport = new StubTransport((method, url, body) -> {
+            String search = search(url);
+            if (search.equals("slow")) {
+                // stalls until the deadline aborts it
+                CountDownLatch abort = new CountDownLatch(1);
+                Cancellation.onAbort(abort::countDown);
+                try {
+                    abort.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                aborted.countDown();
+                throw new IOException("connection aborted");
+            }
+            return hit(search);
+        });
+        // a single worker, so the slow search holds the only slot
+        try (SearchIndexClient client = client(transport).maxInFlight(1).build()) {
+            long start = System.nanoTime();
+            MultiSearchResult result = client.multiSearch(requests("one", "slow", "three"), 1, 200,
+                                                          TimeUnit.MILLISECONDS);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals("one", hotelId(result.item(0)));
+            assertTrue(result.item(1).error() instanceof InterruptedIOException);
+            assertTrue(result.item(1).error().getMessage().contains("did not complete"));
+            assertTrue(result.item(2).error().getMessage().contains("not sent"));
+            assertTrue(aborted.await(1, TimeUnit.SECONDS));
+            // the slot is free again
+            assertEquals("four", client.searchAsync("four", SearchOptions.builder().build())
+                    .get(1, TimeUnit.SECONDS).hits().get(0).document().get("HotelId"));
+        }
+        assertEquals(3, transport.requests());
+    }
+}
@@ -0,0 +1,181 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledHttpTransportTest {
+    private static final byte[] RESPONSE = "{\"value\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private final Set<InetSocketAddress> clientConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean dropConnections;
+    private volatile long stallMillis;
+    private PooledHttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        transport = PooledHttpTransport.builder().maxConnectionsPerHost(4).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        clientConnections.add(exchange.getRemoteAddress());
+        if (dropConnections) {
+            // the server closes the connection without sending a response
+            throw new IOException("dropped");
+        }
+        if (stallMillis > 0) {
+            try {
+                Thread.sleep(stallMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() >= 0) {
+                // drain the request so the connection can be kept alive
+            }
+        }
+        exchange.sendResponseHeaders(200, RESPONSE.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(RESPONSE);
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/indexes/hotels/docs";
+    }
+
+    private static String read(HttpTransport.Response response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = response.body()) {
+            byte[] buffer = new byte[256];
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sequentialRequestsReuseOneConnection() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            try (HttpTransport.Response response = transport.execute("GET", url(), Collections.emptyMap(), null)) {
+                assertEquals(200, response.statusCode());
+                assertEquals(1, transport.leasedConnections());
+                assertEquals("{\"value\":[]}", read(response));
+            }
+            assertEquals(0, transport.leasedConnections());
+            assertEquals(1, transport.availableConnections());
+        }
+        assertEquals(50, requests.get());
+        assertEquals(1, clientConnections.size());
+    }
+
+    @Test
+    public void requestBodiesDoNotBreakReuse() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            try (HttpTransport.Response response = transport.execute(
+                    "POST", url(), Collections.singletonMap("content-type", "application/json"),
+                    out -> out.write(RESPONSE))) {
+                assertEquals(200, response.statusCode());
+            }
+        }
+        assertEquals(0, transport.leasedConnections());
+        assertEquals(1, transport.availableConnections());
+        assertEquals(1, clientConnections.size());
+    }
+
+    @Test
+    public void unreadResponsesStillReleaseTheirConnection() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            transport.execute("GET", url(), Collections.emptyMap(), null).close();
+        }
+        assertEquals(0, transport.leasedConnections());
+        assertEquals(1, clientConnections.size());
+    }
+
+    @Test
+    public void warmUpOpensConnectionsThatAreReusedLater() throws IOException {
+        // slow enough that the warm-up requests overlap and each needs a connection of its own
+        stallMillis = 200;
+        transport.warmUp(url(), 4);
+        stallMillis = 0;
+        assertEquals(4, requests.get());
+        assertEquals(4, clientConnections.size());
+        assertEquals(0, transport.leasedConnections());
+        assertEquals(4, transport.availableConnections());
+        for (int i = 0; i < 20; i++) {
+            transport.execute("GET", url(), Collections.emptyMap(), null).close();
+        }
+        assertEquals(4, clientConnections.size());
+        assertEquals(4, transport.availableConnections());
+    }
+
+    @Test
+    public void droppedConnectionsAreNotRetriedByHttpClient() {
+        dropConnections = true;
+        try {
+            transport.execute("GET", url(), Collections.emptyMap(), null).close();
+            fail("Expected the dropped connection to fail the request");
+        } catch (IOException expected) {
+            // RetryPolicy decides about retries, not the transport
+        }
+        assertEquals(1, requests.get());
+        assertEquals(0, transport.leasedConnections());
+    }
+
+    @Test
+    public void cancellationAbortsAStalledRequest() throws IOException, InterruptedException {
+        stallMillis = 5_000;
+        Cancellation cancellation = new Cancellation();
+        ClientExecutors.sharedScheduler().schedule(cancellation::cancel, 100, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            cancellation.run(() -> {
+                transport.execute("GET", url(), Collections.emptyMap(), null).close();
+                return null;
+            });
+            fail("Expected the cancelled request to fail");
+        } catch (IOException expected) {
+            // the connection was closed under the waiting request
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        // the cancelling thread hands the connection back, possibly after the request has failed
+        for (int i = 0; i < 100 && transport.leasedConnections() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, transport.leasedConnections());
+    }
+}
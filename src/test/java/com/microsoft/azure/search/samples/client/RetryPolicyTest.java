@@ -0,0 +1,179 @@
+package com.microsoft.azure.search.samples.client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    private static final StubTransport.Reply DOCUMENT = StubTransport.Reply.ok("{\"HotelId\":\"1\"}");
+
+    // answers with the given replies in order, the last one repeats
+    private static StubTransport sequence(StubTransport.Reply... replies) {
+        Iterator<StubTransport.Reply> iterator = Arrays.asList(replies).iterator();
+        StubTransport.Reply[] last = new StubTransport.Reply[1];
+        return new StubTransport((method, url, body) -> {
+            synchronized (last) {
+                if (iterator.hasNext()) {
+                    last[0] = iterator.next();
+                }
+                return last[0];
+            }
+        });
+    }
+
+    private static SearchIndexClient client(StubTransport transport, RetryPolicy retryPolicy) {
+        return SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .retryPolicy(retryPolicy)
+                .build();
+    }
+
+    private static RetryPolicy.Builder fastPolicy() {
+        return RetryPolicy.builder()
+                .initialBackoff(10, TimeUnit.MILLISECONDS)
+                .maxBackoff(50, TimeUnit.MILLISECONDS);
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Test
+    public void throttlingIsRetriedUntilTheRequestSucceeds() throws IOException {
+        StubTransport transport = sequence(StubTransport.Reply.error(429), StubTransport.Reply.error(503), DOCUMENT);
+        RetryPolicy policy = fastPolicy().build();
+        try (SearchIndexClient client = client(transport, policy)) {
+            long start = System.nanoTime();
+            assertEquals("1", client.lookup("1").get("HotelId"));
+            // two backoffs of at most maxBackoff each
+            assertTrue(millisSince(start) < 500);
+        }
+        assertEquals(3, transport.requests());
+        assertEquals(2, policy.retries());
+    }
+
+    @Test
+    public void asyncRequestsAreRetriedToo() throws Exception {
+        StubTransport transport = sequence(StubTransport.Reply.error(503), StubTransport.Reply.error(503), DOCUMENT);
+        RetryPolicy policy = fastPolicy().build();
+        try (SearchIndexClient client = client(transport, policy)) {
+            assertEquals("1", client.lookupAsync("1").get(5, TimeUnit.SECONDS).get("HotelId"));
+        }
+        assertEquals(3, transport.requests());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        StubTransport transport = sequence(StubTransport.Reply.error(503));
+        try (SearchIndexClient client = client(transport, fastPolicy().maxAttempts(3).build())) {
+            client.lookup("1");
+            fail("Expected the lookup to fail");
+        } catch (IOException e) {
+            assertTrue(e instanceof ThrottledException);
+            assertEquals(503, ((ThrottledException) e).responseCode());
+        }
+        assertEquals(3, transport.requests());
+    }
+
+    @Test
+    public void retryAfterMillisecondsOverridesTheBackoff() throws IOException {
+        StubTransport transport = sequence(StubTransport.Reply.error(429, "retry-after-ms", "300"), DOCUMENT);
+        try (SearchIndexClient client = client(transport, fastPolicy().build())) {
+            long start = System.nanoTime();
+            client.lookup("1");
+            long elapsed = millisSince(start);
+            assertTrue("retried after " + elapsed + " ms", elapsed >= 300 && elapsed < 1500);
+        }
+        assertEquals(2, transport.requests());
+    }
+
+    @Test
+    public void retryAfterSecondsOverridesTheBackoff() throws IOException {
+        StubTransport transport = sequence(StubTransport.Reply.error(503, "Retry-After", "1"), DOCUMENT);
+        try (SearchIndexClient client = client(transport, fastPolicy().build())) {
+            long start = System.nanoTime();
+            client.lookup("1");
+            long elapsed = millisSince(start);
+            assertTrue("retried after " + elapsed + " ms", elapsed >= 1000 && elapsed < 2500);
+        }
+        assertEquals(2, transport.requests());
+    }
+
+    @Test
+    public void clientErrorsAreNeverRetried() {
+        for (int status : new int[] { 400, 401, 403, 404, 409, 412 }) {
+            StubTransport transport = sequence(StubTransport.Reply.error(status), DOCUMENT);
+            RetryPolicy policy = fastPolicy().build();
+            try (SearchIndexClient client = client(transport, policy)) {
+                client.lookup("1");
+                fail("Expected HTTP " + status + " to fail");
+            } catch (IOException e) {
+                assertTrue(e instanceof HttpErrorException);
+                assertEquals(status, ((HttpErrorException) e).statusCode());
+            }
+            assertEquals(1, transport.requests());
+            assertEquals(0, policy.retries());
+        }
+    }
+
+    @Test
+    public void clientErrorsAreNeverRetriedAsync() throws InterruptedException {
+        StubTransport transport = sequence(StubTransport.Reply.error(404), DOCUMENT);
+        try (SearchIndexClient client = client(transport, fastPolicy().build())) {
+            client.lookupAsync("1").get(5, TimeUnit.SECONDS);
+            fail("Expected HTTP 404 to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpErrorException);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(1, transport.requests());
+    }
+
+    @Test
+    public void retryBudgetCapsRetriesAcrossRequests() throws IOException {
+        StubTransport transport = sequence(StubTransport.Reply.error(503));
+        RetryPolicy policy = fastPolicy().maxBudgetTokens(2).budgetRatio(0).build();
+        try (SearchIndexClient client = client(transport, policy)) {
+            for (int i = 0; i < 3; i++) {
+                try {
+                    client.lookup("1");
+                    fail("Expected the lookup to fail");
+                } catch (ThrottledException expected) {
+                    // the service stays unavailable
+                }
+            }
+        }
+        // the first lookup spends both tokens, the others get a single attempt each
+        assertEquals(5, transport.requests());
+        assertEquals(2, policy.retries());
+        assertEquals(3, policy.retriesDenied());
+    }
+
+    @Test
+    public void noRetryIsMadePastTheDeadline() throws IOException {
+        StubTransport transport = sequence(StubTransport.Reply.error(503, "retry-after-ms", "150"));
+        RetryPolicy policy = fastPolicy().maxElapsed(OperationType.LOOKUP, 200, TimeUnit.MILLISECONDS).build();
+        try (SearchIndexClient client = client(transport, policy)) {
+            long start = System.nanoTime();
+            try {
+                client.lookup("1");
+                fail("Expected the lookup to fail");
+            } catch (ThrottledException expected) {
+                // a second retry would start 300 ms after the first attempt
+            }
+            assertTrue(millisSince(start) < 1000);
+        }
+        assertEquals(2, transport.requests());
+        assertEquals(1, policy.retries());
+        assertEquals(1, policy.retriesDenied());
+    }
+}
@@ -0,0 +1,170 @@
+package com.microsoft.azure.search.samples.client;
+
+import com.microsoft.azure.search.samples.demo.Hotel;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.index.IndexDefinition;
+import com.microsoft.azure.search.samples.index.IndexField;
+import com.microsoft.azure.search.samples.index.SimpleIndexField;
+import com.microsoft.azure.search.samples.index.Suggester;
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.options.SuggestOptions;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Every client shares the readers and writers of JsonCodecs. Runs all kinds of requests from many threads at once,
+ * along with index definitions and canonical documents, which are written with differently configured mappers, and
+ * checks that each request body and each parsed response is exactly what the same call produces on its own.
+ */
+public class SharedCodecsTest {
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 300;
+
+    private final String hotelJson = resource("/hotel1");
+    private final String searchResponse = "{\"value\":[{\"@search.score\":1.5," + hotelJson.substring(1) + "]}";
+    private final String suggestResponse = "{\"value\":[{\"@search.text\":\"Secret Point Motel\","
+            + hotelJson.substring(1) + "]}";
+    private final Queue<String> definitions = new ConcurrentLinkedQueue<>();
+    private final Queue<String> batches = new ConcurrentLinkedQueue<>();
+
+    private static String resource(String name) {
+        try (InputStream in = SharedCodecsTest.class.getResourceAsStream(name);
+             Scanner scanner = new Scanner(in, "UTF-8")) {
+            return scanner.useDelimiter("\\A").next().trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private StubTransport.Reply handle(String method, String url, byte[] body) {
+        if (url.contains("/indexes?")) {
+            definitions.add(new String(body, StandardCharsets.UTF_8));
+            return StubTransport.Reply.ok("{}");
+        }
+        if (url.contains("/docs/index?")) {
+            batches.add(new String(body, StandardCharsets.UTF_8));
+            return StubTransport.Reply.ok("{\"value\":[{\"key\":\"1\",\"status\":true,\"statusCode\":200},"
+                                                  + "{\"key\":\"2\",\"status\":true,\"statusCode\":200}]}");
+        }
+        if (url.contains("/docs/suggest?")) {
+            return StubTransport.Reply.ok(suggestResponse);
+        }
+        if (url.contains("/docs('")) {
+            return StubTransport.Reply.ok(hotelJson);
+        }
+        return StubTransport.Reply.ok(searchResponse);
+    }
+
+    // large enough that writing it takes a while, to overlap with the other requests
+    private static IndexDefinition definition() {
+        List<IndexField> fields = new ArrayList<>();
+        fields.add(SimpleIndexField.builder(Hotel.HOTEL_ID, "Edm.String").key(true).filterable(true).build());
+        fields.add(SimpleIndexField.builder(Hotel.HOTEL_NAME, "Edm.String").searchable(true).build());
+        for (int i = 0; i < 500; i++) {
+            fields.add(SimpleIndexField.builder("Attribute" + i, "Edm.Double").sortable(true).build());
+        }
+        Suggester suggester = Suggester.create("sg", "analyzingInfixMatching",
+                                               Collections.singletonList(Hotel.HOTEL_NAME));
+        return IndexDefinition.create("hotels", fields, Collections.singletonList(suggester));
+    }
+
+    // one of each kind of call, returning what it produced
+    private List<Object> calls(SearchIndexClient client, Hotel hotel, int round) throws IOException {
+        // not in key order, so the batch shows whether the canonical writer's sorting leaks into other writers
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put(Hotel.TAGS, Arrays.asList("pool", "view"));
+        document.put(Hotel.HOTEL_ID, "2");
+        List<Object> results = new ArrayList<>();
+        switch (round % 4) {
+            case 0:
+                client.createIndex(definition());
+                results.add(client.indexBatch(Arrays.asList(IndexOperation.uploadOperation(hotel),
+                                                            IndexOperation.mergeOperation(document))));
+                results.add(new String(JsonCodecs.CANONICAL.writeValueAsBytes(document), StandardCharsets.UTF_8));
+                break;
+            case 1:
+                results.add(client.search("motel", SearchOptions.builder().build()));
+                results.add(client.search("motel", SearchOptions.builder().build(), Hotel.class));
+                break;
+            case 2:
+                results.add(client.lookup("1"));
+                results.add(client.lookup("1", Hotel.class));
+                break;
+            default:
+                results.add(client.suggest("sec", "sg", SuggestOptions.builder().build()));
+                results.add(client.suggest("sec", "sg", SuggestOptions.builder().build(), Hotel.class));
+                break;
+        }
+        return results;
+    }
+
+    @Test
+    public void readersAndWritersAreSafeToShareAcrossThreads() throws Exception {
+        StubTransport transport = new StubTransport(this::handle);
+        Hotel hotel = JsonCodecs.readerFor(Hotel.class).readValue(hotelJson);
+        try (SearchIndexClient client = SearchIndexClient.builder("service", "hotels", "key")
+                .transport(transport)
+                .build()) {
+            List<List<Object>> expected = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                expected.add(calls(client, hotel, round));
+            }
+            String definition = definitions.poll();
+            String batch = batches.poll();
+            assertTrue(batch.contains("\"HotelName\":\"Secret Point Motel\""));
+            assertTrue(batch.contains("\"@search.action\":\"merge\",\"Tags\":[\"pool\",\"view\"],\"HotelId\":\"2\""));
+            assertEquals("{\"HotelId\":\"2\",\"Tags\":[\"pool\",\"view\"]}", expected.get(0).get(1));
+
+            ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int offset = thread;
+                    futures.add(threads.submit(() -> {
+                        start.await();
+                        for (int round = offset; round < offset + ROUNDS; round++) {
+                            assertEquals(expected.get(round % 4), calls(client, hotel, round));
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                threads.shutdownNow();
+            }
+            assertEquals(THREADS * ROUNDS / 4, definitions.size());
+            for (String body : definitions) {
+                assertEquals(definition, body);
+            }
+            assertEquals(THREADS * ROUNDS / 4, batches.size());
+            for (String body : batches) {
+                assertEquals(batch, body);
+            }
+        }
+    }
+}
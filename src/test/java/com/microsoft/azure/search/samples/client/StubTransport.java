@@ -0,0 +1,100 @@
+package com.microsoft.azure.search.samples.client;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// An in-memory HttpTransport that answers every request through a handler and counts the requests
+class StubTransport implements HttpTransport {
+    interface Handler {
+        Reply handle(String method, String url, byte[] body) throws IOException;
+    }
+
+    private final Handler handler;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    StubTransport(Handler handler) {
+        this.handler = handler;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    @Override
+    public Response execute(String method, String url, Map<String, String> headers, @Nullable RequestBody body)
+            throws IOException {
+        requests.incrementAndGet();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (body != null) {
+            body.writeTo(out);
+        }
+        Reply reply = handler.handle(method, url, out.toByteArray());
+        return new Response() {
+            @Override
+            public int statusCode() {
+                return reply.statusCode;
+            }
+
+            @Override
+            public String reasonPhrase() {
+                return "Stub " + reply.statusCode;
+            }
+
+            @Override
+            public String header(String name) {
+                return reply.headers.get(name);
+            }
+
+            @Override
+            public InputStream body() {
+                return new ByteArrayInputStream(reply.body);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static class Reply {
+        final int statusCode;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        private Reply(int statusCode, Map<String, String> headers, String body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+        }
+
+        static Reply ok(String json) {
+            return new Reply(200, Collections.emptyMap(), json);
+        }
+
+        static Reply of(int statusCode, String json) {
+            return new Reply(statusCode, Collections.emptyMap(), json);
+        }
+
+        static Reply error(int statusCode) {
+            return new Reply(statusCode, Collections.emptyMap(), "");
+        }
+
+        static Reply error(int statusCode, String header, String value) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put(header, value);
+            return new Reply(statusCode, headers, "");
+        }
+    }
+}
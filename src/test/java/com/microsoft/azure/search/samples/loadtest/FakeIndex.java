@@ -0,0 +1,335 @@
+package com.microsoft.azure.search.samples.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/*
+ * In-memory documents of one index of the fake service. Search is a plain scan that scores documents by how often
+ * the search terms occur in their string fields; it is meant to produce realistically shaped responses, not
+ * relevance.
+ */
+class FakeIndex {
+    private static final int DEFAULT_TOP = 50;
+    private static final int DEFAULT_SUGGEST_TOP = 5;
+    private static final int DEFAULT_FACET_COUNT = 10;
+
+    private final Map<String, Object> definition;
+    private final String keyField;
+    private final List<String> suggesterFields = new ArrayList<>();
+    private final ConcurrentSkipListMap<String, Map<String, Object>> documents = new ConcurrentSkipListMap<>();
+    // term frequencies over all string fields of each document, so a search doesn't tokenize the whole index
+    private final Map<String, Map<String, Integer>> termCounts = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    FakeIndex(Map<String, Object> definition) {
+        this.definition = definition;
+        String key = null;
+        for (Map<String, Object> field : (List<Map<String, Object>>) definition.getOrDefault("fields",
+                                                                                          Collections.emptyList())) {
+            if (Boolean.TRUE.equals(field.get("key"))) {
+                key = (String) field.get("name");
+            }
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("The index has no key field");
+        }
+        this.keyField = key;
+        for (Map<String, Object> suggester : (List<Map<String, Object>>) definition.getOrDefault(
+                "suggesters", Collections.emptyList())) {
+            suggesterFields.addAll((List<String>) suggester.getOrDefault("sourceFields", Collections.emptyList()));
+        }
+    }
+
+    Map<String, Object> definition() {
+        return definition;
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    // Applies one "@search.action" and returns its result entry, failing it instead with the given probability
+    Map<String, Object> apply(Map<String, Object> operation, double failureRate) {
+        Map<String, Object> document = new LinkedHashMap<>(operation);
+        Object action = document.remove("@search.action");
+        Object keyValue = document.get(keyField);
+        if (keyValue == null) {
+            return itemResult(null, 400, "Document key cannot be missing or empty.");
+        }
+        String key = String.valueOf(keyValue);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            return itemResult(key, 503, "Service unavailable, injected failure.");
+        }
+        switch (action == null ? "upload" : String.valueOf(action)) {
+            case "upload":
+                documents.put(key, document);
+                termCounts.put(key, countTerms(document));
+                return itemResult(key, 201, null);
+            case "merge":
+                Map<String, Object> merged = documents.computeIfPresent(key, (k, existing) -> merged(existing,
+                                                                                                     document));
+                if (merged == null) {
+                    return itemResult(key, 404, "Document not found.");
+                }
+                termCounts.put(key, countTerms(merged));
+                return itemResult(key, 200, null);
+            case "mergeOrUpload":
+                termCounts.put(key, countTerms(documents.merge(key, document, FakeIndex::merged)));
+                return itemResult(key, 200, null);
+            case "delete":
+                documents.remove(key);
+                termCounts.remove(key);
+                return itemResult(key, 200, null);
+            default:
+                return itemResult(key, 400, "Unknown action " + action);
+        }
+    }
+
+    Map<String, Object> lookup(String key) {
+        return documents.get(key);
+    }
+
+    Map<String, Object> search(QueryParameters query) {
+        List<String> terms = terms(query.first("search", "*"));
+        boolean allTerms = "all".equalsIgnoreCase(query.first("searchMode", "any"));
+        List<String> searchFields = ODataFilter.split(query.first("searchFields", null));
+        Predicate<Map<String, Object>> filter = ODataFilter.parse(query.first("$filter", null));
+
+        List<ScoredDocument> matches = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : documents.entrySet()) {
+            Map<String, Object> document = entry.getValue();
+            if (!filter.test(document)) {
+                continue;
+            }
+            double score;
+            if (terms.isEmpty()) {
+                score = 1.0;
+            } else if (searchFields.isEmpty()) {
+                score = score(termCounts.getOrDefault(entry.getKey(), Collections.emptyMap()), terms, allTerms);
+            } else {
+                score = score(searchFieldCounts(document, searchFields), terms, allTerms);
+            }
+            if (score > 0) {
+                matches.add(new ScoredDocument(document, score));
+            }
+        }
+        matches.sort(order(query.first("$orderby", null)));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (Boolean.parseBoolean(query.first("$count", "false"))) {
+            response.put("@odata.count", matches.size());
+        }
+        if (!query.all("facet").isEmpty()) {
+            Map<String, Object> facets = new LinkedHashMap<>();
+            for (String facet : query.all("facet")) {
+                facets.put(facet.split(",")[0], facet(facet, matches));
+            }
+            response.put("@search.facets", facets);
+        }
+        int skip = Integer.parseInt(query.first("$skip", "0"));
+        int top = Integer.parseInt(query.first("$top", String.valueOf(DEFAULT_TOP)));
+        List<String> select = ODataFilter.split(query.first("$select", null));
+        List<Map<String, Object>> hits = new ArrayList<>();
+        for (int i = skip; i < Math.min(matches.size(), skip + top); i++) {
+            Map<String, Object> hit = new LinkedHashMap<>();
+            hit.put("@search.score", matches.get(i).score);
+            hit.putAll(project(matches.get(i).document, select));
+            hits.add(hit);
+        }
+        response.put("value", hits);
+        return response;
+    }
+
+    Map<String, Object> suggest(QueryParameters query) {
+        String prefix = query.first("search", "").toLowerCase(Locale.ROOT);
+        boolean fuzzy = Boolean.parseBoolean(query.first("fuzzy", "false"));
+        int top = Integer.parseInt(query.first("$top", String.valueOf(DEFAULT_SUGGEST_TOP)));
+        Predicate<Map<String, Object>> filter = ODataFilter.parse(query.first("$filter", null));
+        List<String> select = ODataFilter.split(query.first("$select", keyField));
+
+        List<Map<String, Object>> hits = new ArrayList<>();
+        for (Map<String, Object> document : documents.values()) {
+            if (hits.size() >= top) {
+                break;
+            }
+            if (!filter.test(document)) {
+                continue;
+            }
+            for (String field : suggesterFields) {
+                Object value = document.get(field);
+                if (value instanceof String && matchesPrefix((String) value, prefix, fuzzy)) {
+                    Map<String, Object> hit = new LinkedHashMap<>();
+                    hit.put("@search.text", value);
+                    hit.putAll(project(document, select));
+                    hits.add(hit);
+                    break;
+                }
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("value", hits);
+        return response;
+    }
+
+    private static boolean matchesPrefix(String value, String prefix, boolean fuzzy) {
+        for (String word : terms(value)) {
+            // fuzzy matching is approximated by tolerating a wrong last character
+            if (word.startsWith(prefix) || (fuzzy && prefix.length() > 2
+                    && word.startsWith(prefix.substring(0, prefix.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double score(Map<String, Integer> counts, List<String> terms, boolean allTerms) {
+        int total = 0;
+        for (String term : terms) {
+            Integer count = counts.get(term);
+            if (count != null) {
+                total += count;
+            } else if (allTerms) {
+                return 0;
+            }
+        }
+        return total;
+    }
+
+    private static Map<String, Integer> searchFieldCounts(Map<String, Object> document, List<String> searchFields) {
+        List<Object> values = new ArrayList<>();
+        for (String field : searchFields) {
+            values.addAll(ODataFilter.valuesAt(document, field.split("/")));
+        }
+        return countTerms(values);
+    }
+
+    private static Map<String, Integer> countTerms(Object node) {
+        Map<String, Integer> counts = new HashMap<>();
+        countTerms(node, counts);
+        return counts;
+    }
+
+    private static void countTerms(Object node, Map<String, Integer> counts) {
+        if (node instanceof String) {
+            for (String word : terms((String) node)) {
+                counts.merge(word, 1, Integer::sum);
+            }
+        } else if (node instanceof Iterable) {
+            for (Object element : (Iterable<?>) node) {
+                countTerms(element, counts);
+            }
+        } else if (node instanceof Map) {
+            countTerms(((Map<?, ?>) node).values(), counts);
+        }
+    }
+
+    // splits on anything that isn't a letter or digit
+    private static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static List<Map<String, Object>> facet(String facet, List<ScoredDocument> matches) {
+        String[] parts = facet.split(",");
+        int count = DEFAULT_FACET_COUNT;
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("count:")) {
+                count = Integer.parseInt(parts[i].substring("count:".length()));
+            }
+        }
+        // interval and values options are not supported, those facets get value counts as well
+        Map<Object, Integer> counts = new HashMap<>();
+        for (ScoredDocument match : matches) {
+            for (Object value : ODataFilter.valuesAt(match.document, parts[0].split("/"))) {
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<Object, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Object, Integer>comparingByValue().reversed());
+        List<Map<String, Object>> values = new ArrayList<>();
+        for (Map.Entry<Object, Integer> entry : entries.subList(0, Math.min(count, entries.size()))) {
+            Map<String, Object> value = new LinkedHashMap<>();
+            value.put("count", entry.getValue());
+            value.put("value", entry.getKey());
+            values.add(value);
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<ScoredDocument> order(String orderBy) {
+        Comparator<ScoredDocument> byScore = Comparator.comparingDouble((ScoredDocument d) -> d.score).reversed();
+        if (orderBy == null) {
+            return byScore;
+        }
+        // only the first sort clause is honoured, ties are broken by score
+        String[] clause = orderBy.split(",")[0].trim().split("\\s+");
+        String[] path = clause[0].split("/");
+        Comparator<ScoredDocument> byField = Comparator.comparing(d -> {
+            List<Object> values = ODataFilter.valuesAt(d.document, path);
+            return values.isEmpty() ? null : (Comparable<Object>) values.get(0);
+        }, Comparator.nullsFirst(Comparator.naturalOrder()));
+        if (clause.length > 1 && clause[1].equalsIgnoreCase("desc")) {
+            byField = byField.reversed();
+        }
+        return byField.thenComparing(byScore);
+    }
+
+    private static Map<String, Object> project(Map<String, Object> document, List<String> select) {
+        if (select.isEmpty() || select.contains("*")) {
+            return document;
+        }
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (String field : select) {
+            if (document.containsKey(field)) {
+                projected.put(field, document.get(field));
+            }
+        }
+        return projected;
+    }
+
+    private static Map<String, Object> merged(Map<String, Object> existing, Map<String, Object> update) {
+        Map<String, Object> merged = new LinkedHashMap<>(existing);
+        merged.putAll(update);
+        return merged;
+    }
+
+    private static Map<String, Object> itemResult(String key, int statusCode, String errorMessage) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("key", key);
+        result.put("status", errorMessage == null);
+        result.put("errorMessage", errorMessage);
+        result.put("statusCode", statusCode);
+        return result;
+    }
+
+    private static class ScoredDocument {
+        final Map<String, Object> document;
+        final double score;
+
+        ScoredDocument(Map<String, Object> document, double score) {
+            this.document = document;
+            this.score = score;
+        }
+    }
+}
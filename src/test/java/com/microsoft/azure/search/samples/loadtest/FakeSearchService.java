@@ -0,0 +1,332 @@
+package com.microsoft.azure.search.samples.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Local stand-in for the search service, for load tests that shouldn't cost money. It serves the endpoints
+ * SearchIndexClient uses from in-memory indexes:
+ *
+ *   POST   /indexes                       create an index
+ *   GET    /indexes/{index}               get an index definition
+ *   DELETE /indexes/{index}               delete an index
+ *   POST   /indexes/{index}/docs/index    apply an index batch
+ *   GET    /indexes/{index}/docs          search
+ *   GET    /indexes/{index}/docs/suggest  suggest
+ *   GET    /indexes/{index}/docs('{key}') lookup
+ *
+ * Every request waits for a random latency between minLatency and maxLatency, and fails with 429 or 503 at the
+ * configured rates. Documents in a batch fail individually with 503 at partialFailureRate, which turns the
+ * response into a 207. Gzip request bodies are accepted, and responses are gzipped when the client asks for it.
+ * Point a client at it through SearchIndexClient.Builder.endpoint(service.endpoint()).
+ */
+public class FakeSearchService implements Closeable {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // responses are gzipped above this size when the client accepts it, as the real service does
+    private static final int MIN_COMPRESSED_RESPONSE_BYTES = 1024;
+    private static final Pattern INDEX_PATH = Pattern.compile("^/indexes/([^/]+)(/docs(?:/index|/suggest)?)?$");
+    private static final Pattern LOOKUP_PATH = Pattern.compile("^/indexes/([^/]+)/docs\\('(.*)'\\)$");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, FakeIndex> indexes = new ConcurrentHashMap<>();
+    private final long minLatencyMicros;
+    private final long maxLatencyMicros;
+    private final double throttleRate;
+    private final double unavailableRate;
+    private final double partialFailureRate;
+    private final int retryAfterSeconds;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private FakeSearchService(Builder builder) throws IOException {
+        this.minLatencyMicros = builder.minLatencyMicros;
+        this.maxLatencyMicros = builder.maxLatencyMicros;
+        this.throttleRate = builder.throttleRate;
+        this.unavailableRate = builder.unavailableRate;
+        this.partialFailureRate = builder.partialFailureRate;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "fake-search-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port),
+                                        builder.backlog);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    // requests answered with an injected 429 or 503
+    public long injectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public int documentCount(String indexName) {
+        FakeIndex index = indexes.get(indexName);
+        return index == null ? 0 : index.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            injectLatency();
+            double dice = ThreadLocalRandom.current().nextDouble();
+            if (dice < throttleRate) {
+                injectedErrors.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                sendError(exchange, 429, "Too many requests, injected failure.");
+            } else if (dice < throttleRate + unavailableRate) {
+                injectedErrors.incrementAndGet();
+                sendError(exchange, 503, "Service unavailable, injected failure.");
+            } else {
+                route(exchange);
+            }
+        } catch (RuntimeException e) {
+            sendError(exchange, 400, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        QueryParameters query = new QueryParameters(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals("/indexes") && method.equals("POST")) {
+            Map<String, Object> definition = OBJECT_MAPPER.readValue(requestBody(exchange),
+                                                                     new TypeReference<Map<String, Object>>() {});
+            String name = (String) definition.get("name");
+            if (indexes.putIfAbsent(name, new FakeIndex(definition)) != null) {
+                sendError(exchange, 409, "Index " + name + " already exists.");
+            } else {
+                send(exchange, 201, definition);
+            }
+            return;
+        }
+        Matcher lookup = LOOKUP_PATH.matcher(path);
+        if (lookup.matches() && method.equals("GET")) {
+            Map<String, Object> document = index(exchange, lookup.group(1)) == null
+                    ? null
+                    : indexes.get(lookup.group(1)).lookup(lookup.group(2));
+            if (document == null) {
+                sendError(exchange, 404, "Document not found.");
+            } else {
+                send(exchange, 200, document);
+            }
+            return;
+        }
+        Matcher indexPath = INDEX_PATH.matcher(path);
+        if (!indexPath.matches()) {
+            sendError(exchange, 404, "Unknown resource " + path);
+            return;
+        }
+        String name = indexPath.group(1);
+        String resource = indexPath.group(2) == null ? "" : indexPath.group(2);
+        if (resource.isEmpty() && method.equals("DELETE")) {
+            if (indexes.remove(name) == null) {
+                sendError(exchange, 404, "Index " + name + " not found.");
+            } else {
+                send(exchange, 204, null);
+            }
+            return;
+        }
+        FakeIndex index = index(exchange, name);
+        if (index == null) {
+            return;
+        }
+        if (resource.isEmpty() && method.equals("GET")) {
+            send(exchange, 200, index.definition());
+        } else if (resource.equals("/docs") && method.equals("GET")) {
+            send(exchange, 200, index.search(query));
+        } else if (resource.equals("/docs/suggest") && method.equals("GET")) {
+            send(exchange, 200, index.suggest(query));
+        } else if (resource.equals("/docs/index") && method.equals("POST")) {
+            indexBatch(exchange, index);
+        } else {
+            sendError(exchange, 405, method + " is not supported on " + path);
+        }
+    }
+
+    private void indexBatch(HttpExchange exchange, FakeIndex index) throws IOException {
+        Map<String, List<Map<String, Object>>> batch;
+        try (InputStream body = requestBody(exchange)) {
+            batch = OBJECT_MAPPER.readValue(body, new TypeReference<Map<String, List<Map<String, Object>>>>() {});
+        }
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean allSucceeded = true;
+        for (Map<String, Object> operation : batch.getOrDefault("value", Collections.emptyList())) {
+            Map<String, Object> result = index.apply(operation, partialFailureRate);
+            allSucceeded &= Boolean.TRUE.equals(result.get("status"));
+            results.add(result);
+        }
+        send(exchange, allSucceeded ? 200 : 207, Collections.singletonMap("value", results));
+    }
+
+    private FakeIndex index(HttpExchange exchange, String name) throws IOException {
+        FakeIndex index = indexes.get(name);
+        if (index == null) {
+            sendError(exchange, 404, "Index " + name + " not found.");
+        }
+        return index;
+    }
+
+    private void injectLatency() {
+        if (maxLatencyMicros <= 0) {
+            return;
+        }
+        long micros = minLatencyMicros >= maxLatencyMicros
+                ? maxLatencyMicros
+                : ThreadLocalRandom.current().nextLong(minLatencyMicros, maxLatencyMicros + 1);
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", "");
+        error.put("message", message);
+        send(exchange, statusCode, Collections.singletonMap("error", error));
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        byte[] json = OBJECT_MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (json.length >= MIN_COMPRESSED_RESPONSE_BYTES && accepted != null && accepted.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(statusCode, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(json);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static InputStream requestBody(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        return "gzip".equalsIgnoreCase(encoding)
+                ? new GZIPInputStream(exchange.getRequestBody())
+                : exchange.getRequestBody();
+    }
+
+    public static class Builder {
+        private int port;
+        private int threads = 64;
+        private int backlog = 1024;
+        private long minLatencyMicros;
+        private long maxLatencyMicros;
+        private double throttleRate;
+        private double unavailableRate;
+        private double partialFailureRate;
+        private int retryAfterSeconds = 1;
+
+        private Builder() {
+        }
+
+        // 0, the default, picks a free port
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        // requests served at the same time, including the ones waiting out their latency
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Builder latency(long min, long max, TimeUnit unit) {
+            this.minLatencyMicros = unit.toMicros(min);
+            this.maxLatencyMicros = unit.toMicros(max);
+            return this;
+        }
+
+        // share of requests answered with 429 and a Retry-After header
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        // share of requests answered with 503
+        public Builder unavailableRate(double unavailableRate) {
+            this.unavailableRate = unavailableRate;
+            return this;
+        }
+
+        // share of documents in index batches that fail on their own with 503
+        public Builder partialFailureRate(double partialFailureRate) {
+            this.partialFailureRate = partialFailureRate;
+            return this;
+        }
+
+        public Builder retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        public FakeSearchService start() throws IOException {
+            return new FakeSearchService(this);
+        }
+    }
+}
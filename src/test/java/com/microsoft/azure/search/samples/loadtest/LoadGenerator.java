@@ -0,0 +1,457 @@
+package com.microsoft.azure.search.samples.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.search.samples.client.BulkIndexer;
+import com.microsoft.azure.search.samples.client.Compression;
+import com.microsoft.azure.search.samples.client.LatencyRecorder;
+import com.microsoft.azure.search.samples.client.OperationType;
+import com.microsoft.azure.search.samples.client.PooledHttpTransport;
+import com.microsoft.azure.search.samples.client.SearchIndexClient;
+import com.microsoft.azure.search.samples.demo.IndexOperation;
+import com.microsoft.azure.search.samples.index.IndexDefinition;
+import com.microsoft.azure.search.samples.index.IndexField;
+import com.microsoft.azure.search.samples.index.SimpleIndexField;
+import com.microsoft.azure.search.samples.index.Suggester;
+import com.microsoft.azure.search.samples.options.SearchOptions;
+import com.microsoft.azure.search.samples.options.SuggestOptions;
+import com.microsoft.azure.search.samples.results.IndexBatchResult;
+import com.microsoft.azure.search.samples.results.SearchResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Drives a mix of the DemoOperations requests against a search service at a fixed rate and reports latency
+ * percentiles and throughput. Without --endpoint it starts a FakeSearchService in-process, so nothing is billed.
+ * Before the run it deletes and recreates the index named by --index, so against a real service it refuses to start
+ * unless that is confirmed with --recreate-index true.
+ *
+ * Requests are started on schedule whether or not earlier ones have finished (an open loop), and latency is
+ * measured from the scheduled start, so a stalled service shows up as latency rather than as a lower request rate.
+ * Requests that can't even be queued because --concurrency * 4 are already outstanding are counted as dropped.
+ *
+ *   java ... LoadGenerator --qps 500 --duration 60 --mix search=60,facets=10,lookup=15,suggest=10,index=5
+ *                          --latency 2-20 --throttle-rate 0.01 --unavailable-rate 0.01
+ *
+ * As a stress test of the client's shared state, run every operation at once, including index creation ("define",
+ * which only runs against the fake service), and check each response with --verify. A response that doesn't match
+ * its request is counted as an IllegalStateException:
+ *
+ *   java ... LoadGenerator --qps 5000 --concurrency 64 --latency 0-1 --verify true
+ *                          --mix search=30,facets=15,lookup=20,suggest=15,index=15,define=5
+ */
+public class LoadGenerator {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String[] HOTEL_RESOURCES = { "hotel1", "hotel10", "hotel11", "hotel12", "hotel13" };
+    private static final String[] SEARCH_TERMS = { "lobby", "mountain", "view", "pool", "hotel", "suite", "city",
+                                                   "historic", "luxury", "budget", "resort", "wifi" };
+    private static final String KEY_FIELD = "HotelId";
+    private static final AtomicInteger DEFINED_INDEXES = new AtomicInteger();
+
+    private final SearchIndexClient client;
+    private final Options options;
+    private final List<Map<String, Object>> hotels = new ArrayList<>();
+    private final LatencyRecorder intervalLatencies = new LatencyRecorder();
+    private final LatencyRecorder totalLatencies = new LatencyRecorder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+
+    LoadGenerator(SearchIndexClient client, Options options) throws IOException {
+        this.client = client;
+        this.options = options;
+        for (String resource : HOTEL_RESOURCES) {
+            hotels.add(OBJECT_MAPPER.readValue(getClass().getResource("/" + resource),
+                                               new TypeReference<Map<String, Object>>() {}));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        FakeSearchService fake = null;
+        String endpoint = options.endpoint;
+        if (endpoint == null) {
+            fake = FakeSearchService.builder()
+                    .latency(options.minLatencyMillis, options.maxLatencyMillis, TimeUnit.MILLISECONDS)
+                    .throttleRate(options.throttleRate)
+                    .unavailableRate(options.unavailableRate)
+                    .partialFailureRate(options.partialFailureRate)
+                    .threads(Math.max(64, options.concurrency * 2))
+                    .start();
+            endpoint = fake.endpoint();
+            System.out.println("Started fake search service at " + endpoint);
+        }
+        LatencyRecorder clientLatencies = new LatencyRecorder();
+        Compression compression = options.compression ? Compression.builder().build() : null;
+        PooledHttpTransport transport = PooledHttpTransport.builder()
+                .maxConnectionsPerHost(options.concurrency)
+                .maxConnectionsTotal(options.concurrency)
+                .build();
+        try (SearchIndexClient client = SearchIndexClient.builder(options.serviceName, options.indexName,
+                                                                  options.apiKey)
+                .endpoint(endpoint)
+                .transport(transport)
+                .maxInFlight(options.concurrency)
+                .metrics(clientLatencies)
+                .compression(compression)
+                .build()) {
+            LoadGenerator generator = new LoadGenerator(client, options);
+            generator.prepareIndex();
+            clientLatencies.snapshotAndReset();
+            generator.run();
+            System.out.println();
+            System.out.println("Client side, per call including retries:");
+            System.out.print(clientLatencies.dump());
+            if (compression != null) {
+                Compression.Stats stats = compression.stats();
+                System.out.printf("Compression: requests %.1f%% of original size, responses %.1f%%%n",
+                                  100 * stats.requestCompressionRatio(), 100 * stats.responseCompressionRatio());
+            }
+            if (fake != null) {
+                System.out.printf("Fake service: %d requests, %d injected 429/503%n", fake.requests(),
+                                  fake.injectedErrors());
+            }
+        } finally {
+            if (fake != null) {
+                fake.close();
+            }
+        }
+    }
+
+    // Recreates the index and loads --documents hotels, copies of the fixtures with their own keys
+    void prepareIndex() throws IOException {
+        client.deleteIndexIfExists();
+        client.createIndex(indexDefinition(options.indexName));
+
+        long start = System.nanoTime();
+        try (BulkIndexer indexer = BulkIndexer.builder(client, KEY_FIELD).build()) {
+            for (int i = 0; i < options.documents; i++) {
+                indexer.add(IndexOperation.uploadOperation(hotel(i)));
+            }
+            indexer.flush();
+            System.out.printf("Loaded %d documents in %d ms, %d failed%n", indexer.stats().documentsSucceeded(),
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                              indexer.stats().documentsFailed());
+        }
+    }
+
+    private static IndexDefinition indexDefinition(String name) {
+        List<IndexField> fields = Arrays.asList(
+                SimpleIndexField.builder(KEY_FIELD, "Edm.String").key(true).filterable(true).build(),
+                SimpleIndexField.builder("HotelName", "Edm.String").searchable(true).build(),
+                SimpleIndexField.builder("Description", "Edm.String").searchable(true).build(),
+                SimpleIndexField.builder("Category", "Edm.String").searchable(true).filterable(true)
+                        .facetable(true).build(),
+                SimpleIndexField.builder("Tags", "Collection(Edm.String)").searchable(true).filterable(true)
+                        .facetable(true).build(),
+                SimpleIndexField.builder("Rating", "Edm.Double").filterable(true).sortable(true)
+                        .facetable(true).build());
+        return IndexDefinition.create(name, fields, Collections.singletonList(
+                Suggester.create("sg", "analyzingInfixMatching", Collections.singletonList("HotelName"))));
+    }
+
+    void run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<Workload, Integer> mix = options.mix();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.qps);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long reportEvery = TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+        long nextReport = start + reportEvery;
+        long scheduled = 0;
+        System.out.printf("Running %s at %.0f requests/s for %d s with %d workers%n", options.mixSpec, options.qps,
+                          options.durationSeconds, options.concurrency);
+
+        for (long next = start; next < end; next += intervalNanos) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+            }
+            if (now >= nextReport) {
+                report("interval", intervalLatencies.snapshotAndReset());
+                nextReport += reportEvery;
+            }
+            scheduled++;
+            if (outstanding.get() >= options.concurrency * 4) {
+                dropped.increment();
+                continue;
+            }
+            Workload workload = pick(mix);
+            long intendedStart = next;
+            outstanding.incrementAndGet();
+            workers.execute(() -> execute(workload, intendedStart));
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        report("total", totalLatencies.snapshot());
+        System.out.printf("Scheduled %d requests, achieved %.1f requests/s, dropped %d%n", scheduled,
+                          (scheduled - dropped.sum()) / elapsedSeconds, dropped.sum());
+        errors.forEach((type, count) -> System.out.printf("  %s: %d%n", type, count.sum()));
+    }
+
+    private void execute(Workload workload, long intendedStart) {
+        boolean succeeded = false;
+        try {
+            workload.run(this);
+            succeeded = true;
+        } catch (Exception e) {
+            errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+        } finally {
+            long latency = System.nanoTime() - intendedStart;
+            intervalLatencies.record(workload.operation, latency, succeeded);
+            totalLatencies.record(workload.operation, latency, succeeded);
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private static void report(String label, Map<OperationType, LatencyRecorder.Snapshot> snapshots) {
+        for (Map.Entry<OperationType, LatencyRecorder.Snapshot> e : snapshots.entrySet()) {
+            LatencyRecorder.Snapshot s = e.getValue();
+            System.out.printf("[%s] %-12s %8.1f/s  p50=%7.2fms p90=%7.2fms p99=%7.2fms p999=%7.2fms "
+                                      + "max=%7.2fms errors=%d%n",
+                              label, e.getKey(), s.callsPerSecond(), s.p50Micros() / 1000.0,
+                              s.p90Micros() / 1000.0, s.p99Micros() / 1000.0, s.p999Micros() / 1000.0,
+                              s.maxMicros() / 1000.0, s.errors());
+        }
+    }
+
+    private static Workload pick(Map<Workload, Integer> mix) {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int dice = ThreadLocalRandom.current().nextInt(total);
+        Workload picked = null;
+        for (Map.Entry<Workload, Integer> e : mix.entrySet()) {
+            picked = e.getKey();
+            dice -= e.getValue();
+            if (dice < 0) {
+                break;
+            }
+        }
+        return picked;
+    }
+
+    private Map<String, Object> hotel(int id) {
+        Map<String, Object> hotel = new LinkedHashMap<>(hotels.get(id % hotels.size()));
+        hotel.put(KEY_FIELD, String.valueOf(id));
+        hotel.put("HotelName", hotel.get("HotelName") + " " + id);
+        return hotel;
+    }
+
+    private static String randomTerm() {
+        return SEARCH_TERMS[ThreadLocalRandom.current().nextInt(SEARCH_TERMS.length)];
+    }
+
+    private void search() throws IOException {
+        verifyHits(client.search(randomTerm(), SearchOptions.builder().includeCount(true).build()));
+    }
+
+    // the shape of DemoOperations.searchAllFeatures
+    private void searchWithFacets() throws IOException {
+        verifyHits(client.search(randomTerm(), SearchOptions.builder()
+                .includeCount(true)
+                .filter("Rating ge " + ThreadLocalRandom.current().nextInt(1, 5))
+                .orderBy("Rating desc")
+                .select("HotelId,HotelName,Rating,Category")
+                .facets(Arrays.asList("Category", "Tags,count:5"))
+                .top(10)
+                .build()));
+    }
+
+    private void lookup() throws IOException {
+        String key = String.valueOf(ThreadLocalRandom.current().nextInt(options.documents));
+        Map<String, Object> document = client.lookup(key);
+        verify(key.equals(document.get(KEY_FIELD)), "Looked up " + key + ", got " + document.get(KEY_FIELD));
+    }
+
+    private void suggest() throws IOException {
+        String term = randomTerm();
+        client.suggest(term.substring(0, Math.min(term.length(), ThreadLocalRandom.current().nextInt(2, 5))), "sg",
+                       SuggestOptions.builder().fuzzy(true).build());
+    }
+
+    private void indexBatch() throws IOException {
+        List<IndexOperation> operations = new ArrayList<>();
+        for (int i = 0; i < options.indexBatchSize; i++) {
+            operations.add(IndexOperation.uploadOperation(
+                    hotel(ThreadLocalRandom.current().nextInt(options.documents))));
+        }
+        IndexBatchResult result = client.indexBatch(operations);
+        verify(result.value().size() == operations.size(),
+               "Sent " + operations.size() + " documents, got " + result.value().size() + " results");
+    }
+
+    // a scratch index with its own name, the service rejects a definition it can't read
+    private void define() throws IOException {
+        client.createIndex(indexDefinition(options.indexName + "-define-" + DEFINED_INDEXES.incrementAndGet()));
+    }
+
+    private void verifyHits(SearchResult result) {
+        for (SearchResult.SearchHit hit : result.hits()) {
+            verify(hit.document().get(KEY_FIELD) instanceof String, "Hit without a key: " + hit.document());
+        }
+    }
+
+    private void verify(boolean condition, String message) {
+        if (options.verify && !condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private enum Workload {
+        SEARCH(OperationType.SEARCH) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.search();
+            }
+        },
+        FACETS(OperationType.SEARCH) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.searchWithFacets();
+            }
+        },
+        LOOKUP(OperationType.LOOKUP) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.lookup();
+            }
+        },
+        SUGGEST(OperationType.SUGGEST) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.suggest();
+            }
+        },
+        INDEX(OperationType.INDEX_BATCH) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.indexBatch();
+            }
+        },
+        DEFINE(OperationType.INDEX_MANAGEMENT) {
+            @Override
+            void run(LoadGenerator generator) throws IOException {
+                generator.define();
+            }
+        };
+
+        final OperationType operation;
+
+        Workload(OperationType operation) {
+            this.operation = operation;
+        }
+
+        abstract void run(LoadGenerator generator) throws IOException;
+    }
+
+    static class Options {
+        String endpoint;
+        String serviceName = "fake";
+        String apiKey = "fake";
+        String indexName = "hotels-load";
+        double qps = 100;
+        int durationSeconds = 30;
+        int concurrency = 32;
+        int documents = 1000;
+        int indexBatchSize = 10;
+        int reportIntervalSeconds = 5;
+        String mixSpec = "search=60,facets=10,lookup=15,suggest=10,index=5";
+        long minLatencyMillis = 2;
+        long maxLatencyMillis = 10;
+        double throttleRate;
+        double unavailableRate;
+        double partialFailureRate;
+        boolean compression;
+        boolean verify;
+        boolean recreateIndex;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+                }
+                values.put(args[i].substring(2), args[++i]);
+            }
+            Options options = new Options();
+            options.endpoint = values.remove("endpoint");
+            options.serviceName = values.getOrDefault("service", options.serviceName);
+            options.apiKey = values.getOrDefault("key", options.apiKey);
+            options.indexName = values.getOrDefault("index", options.indexName);
+            options.qps = Double.parseDouble(values.getOrDefault("qps", String.valueOf(options.qps)));
+            options.durationSeconds = Integer.parseInt(values.getOrDefault("duration",
+                                                                           String.valueOf(options.durationSeconds)));
+            options.concurrency = Integer.parseInt(values.getOrDefault("concurrency",
+                                                                       String.valueOf(options.concurrency)));
+            options.documents = Integer.parseInt(values.getOrDefault("documents",
+                                                                     String.valueOf(options.documents)));
+            options.indexBatchSize = Integer.parseInt(values.getOrDefault("index-batch-size",
+                                                                          String.valueOf(options.indexBatchSize)));
+            options.reportIntervalSeconds = Integer.parseInt(
+                    values.getOrDefault("report-interval", String.valueOf(options.reportIntervalSeconds)));
+            options.mixSpec = values.getOrDefault("mix", options.mixSpec);
+            if (values.containsKey("latency")) {
+                String[] range = values.get("latency").split("-");
+                options.minLatencyMillis = Long.parseLong(range[0]);
+                options.maxLatencyMillis = Long.parseLong(range[range.length - 1]);
+            }
+            options.throttleRate = Double.parseDouble(values.getOrDefault("throttle-rate", "0"));
+            options.unavailableRate = Double.parseDouble(values.getOrDefault("unavailable-rate", "0"));
+            options.partialFailureRate = Double.parseDouble(values.getOrDefault("partial-failure-rate", "0"));
+            options.compression = Boolean.parseBoolean(values.getOrDefault("compression", "false"));
+            options.verify = Boolean.parseBoolean(values.getOrDefault("verify", "false"));
+            options.recreateIndex = Boolean.parseBoolean(values.getOrDefault("recreate-index", "false"));
+            if (options.endpoint != null && !options.recreateIndex) {
+                throw new IllegalArgumentException("The index " + options.indexName + " on " + options.endpoint
+                                                           + " is deleted and recreated before the run, pass "
+                                                           + "--recreate-index true to confirm");
+            }
+            return options;
+        }
+
+        // the workloads of --mix with their weights
+        Map<Workload, Integer> mix() {
+            Map<Workload, Integer> mix = new LinkedHashMap<>();
+            for (String entry : mixSpec.split(",")) {
+                String[] parts = entry.split("=");
+                Workload workload = Workload.valueOf(parts[0].trim().toUpperCase());
+                int weight = Integer.parseInt(parts[1].trim());
+                if (workload == Workload.DEFINE && weight > 0 && endpoint != null) {
+                    throw new IllegalArgumentException("The define workload creates indexes, it only runs against "
+                                                               + "the fake service");
+                }
+                if (weight > 0) {
+                    mix.put(workload, weight);
+                }
+            }
+            if (mix.isEmpty()) {
+                throw new IllegalArgumentException("The workload mix is empty");
+            }
+            return mix;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.microsoft.azure.search.samples.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * The small part of OData $filter that the fake service evaluates: comparisons of a field path with a literal
+ * (eq, ne, lt, le, gt, ge) and search.in(), joined by "and". Anything else, e.g. "or" or lambdas like
+ * Rooms/any(...), doesn't filter at all, so such queries return a superset of what the real service would.
+ */
+final class ODataFilter {
+    private static final Pattern COMPARISON =
+            Pattern.compile("^([\\w/]+)\\s+(eq|ne|lt|le|gt|ge)\\s+(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SEARCH_IN = Pattern.compile(
+            "^search\\.in\\(\\s*([\\w/]+)\\s*,\\s*'((?:[^']|'')*)'\\s*(?:,\\s*'((?:[^']|'')*)'\\s*)?\\)$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Predicate<Map<String, Object>> MATCH_ALL = document -> true;
+
+    private ODataFilter() {
+    }
+
+    static Predicate<Map<String, Object>> parse(String filter) {
+        if (filter == null || filter.trim().isEmpty()) {
+            return MATCH_ALL;
+        }
+        List<String> clauses = splitTopLevel(filter.trim(), " and ");
+        if (clauses == null) {
+            return MATCH_ALL;
+        }
+        Predicate<Map<String, Object>> predicate = MATCH_ALL;
+        for (String clause : clauses) {
+            predicate = predicate.and(parseClause(stripParentheses(clause.trim())));
+        }
+        return predicate;
+    }
+
+    private static Predicate<Map<String, Object>> parseClause(String clause) {
+        Matcher searchIn = SEARCH_IN.matcher(clause);
+        if (searchIn.matches()) {
+            String[] path = searchIn.group(1).split("/");
+            String delimiters = searchIn.group(3) == null ? ", " : unquote(searchIn.group(3));
+            Set<String> values = new HashSet<>();
+            StringBuilder value = new StringBuilder();
+            for (char c : (unquote(searchIn.group(2)) + delimiters.charAt(0)).toCharArray()) {
+                if (delimiters.indexOf(c) < 0) {
+                    value.append(c);
+                } else if (value.length() > 0) {
+                    values.add(value.toString());
+                    value.setLength(0);
+                }
+            }
+            return document -> valuesAt(document, path).stream().anyMatch(v -> values.contains(String.valueOf(v)));
+        }
+        Matcher comparison = COMPARISON.matcher(clause);
+        if (comparison.matches()) {
+            String[] path = comparison.group(1).split("/");
+            String operator = comparison.group(2).toLowerCase();
+            Object literal = literal(comparison.group(3).trim());
+            return document -> {
+                for (Object value : valuesAt(document, path)) {
+                    if (compare(value, operator, literal)) {
+                        return true;
+                    }
+                }
+                return operator.equals("ne") ? valuesAt(document, path).isEmpty() : false;
+            };
+        }
+        return MATCH_ALL;
+    }
+
+    private static boolean compare(Object value, String operator, Object literal) {
+        int order;
+        if (literal == null || value == null) {
+            order = literal == value ? 0 : 1;
+        } else if (value instanceof Number && literal instanceof Number) {
+            order = Double.compare(((Number) value).doubleValue(), ((Number) literal).doubleValue());
+        } else {
+            order = String.valueOf(value).compareTo(String.valueOf(literal));
+        }
+        switch (operator) {
+            case "eq":
+                return order == 0;
+            case "ne":
+                return order != 0;
+            case "lt":
+                return order < 0;
+            case "le":
+                return order <= 0;
+            case "gt":
+                return order > 0;
+            default:
+                return order >= 0;
+        }
+    }
+
+    private static Object literal(String text) {
+        if (text.startsWith("'") && text.endsWith("'") && text.length() >= 2) {
+            return unquote(text.substring(1, text.length() - 1));
+        }
+        if (text.equalsIgnoreCase("null")) {
+            return null;
+        }
+        if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+            return Boolean.valueOf(text);
+        }
+        try {
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            // e.g. a date, compared as a string
+            return text;
+        }
+    }
+
+    // every value at the path, lists along the way are flattened
+    static List<Object> valuesAt(Object node, String[] path) {
+        List<Object> values = new ArrayList<>();
+        collect(node, path, 0, values);
+        return values;
+    }
+
+    private static void collect(Object node, String[] path, int depth, List<Object> values) {
+        if (node instanceof List) {
+            for (Object element : (List<?>) node) {
+                collect(element, path, depth, values);
+            }
+        } else if (depth == path.length) {
+            if (node != null) {
+                values.add(node);
+            }
+        } else if (node instanceof Map) {
+            collect(((Map<?, ?>) node).get(path[depth]), path, depth + 1, values);
+        }
+    }
+
+    // null if the expression has a top level "or", which isn't supported
+    private static List<String> splitTopLevel(String expression, String separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0) {
+                if (expression.regionMatches(true, i, " or ", 0, 4)) {
+                    return null;
+                }
+                if (expression.regionMatches(true, i, separator, 0, separator.length())) {
+                    parts.add(expression.substring(start, i));
+                    start = i + separator.length();
+                    i = start - 1;
+                }
+            }
+        }
+        parts.add(expression.substring(start));
+        return parts;
+    }
+
+    private static String stripParentheses(String clause) {
+        while (clause.startsWith("(") && clause.endsWith(")")
+                && balanced(clause.substring(1, clause.length() - 1))) {
+            clause = clause.substring(1, clause.length() - 1).trim();
+        }
+        return clause;
+    }
+
+    private static boolean balanced(String expression) {
+        int depth = 0;
+        for (char c : expression.toCharArray()) {
+            depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+            if (depth < 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    private static String unquote(String text) {
+        return text.replace("''", "'");
+    }
+
+    static List<String> split(String list) {
+        return list == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(list.split("\\s*,\\s*")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.microsoft.azure.search.samples.loadtest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The decoded query string of a request, parameters like "facet" can repeat
+final class QueryParameters {
+    private final Map<String, List<String>> parameters = new HashMap<>();
+
+    QueryParameters(String rawQuery) {
+        if (rawQuery == null) {
+            return;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = decode(equals < 0 ? pair : pair.substring(0, equals));
+            String value = equals < 0 ? "" : decode(pair.substring(equals + 1));
+            parameters.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+        }
+    }
+
+    String first(String name, String defaultValue) {
+        List<String> values = parameters.get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+
+    List<String> all(String name) {
+        return parameters.getOrDefault(name, Collections.emptyList());
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}